@@ -0,0 +1,103 @@
+/*
+ * ly.secore.compute.DeviceManagementTool.DataModel.JsonReaderBenchmark
+ * Benchmark of reading the product descriptor catalog
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Parsing and linking of the product descriptor catalog.  The bundled catalog is scaled up by
+ * copying every descriptor with a unique suffix on its keys, so the cost of linking large
+ * catalogs shows as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonReaderBenchmark {
+  private static final String CATALOG =
+      "/ly/secore/compute/DeviceManagementTool/product-descriptors.json";
+
+  @Param({"1", "100", "1000"})
+  public int copies;
+
+  private byte[] catalog;
+
+  @Setup
+  public void setUp() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    ObjectNode rootNode;
+
+    try (InputStream inputStream = JsonReader.class.getResourceAsStream(CATALOG)) {
+      rootNode = (ObjectNode)objectMapper.readTree(inputStream);
+    }
+
+    scale(rootNode, "product_descriptors", "product_key", "type", "personality");
+    scale(rootNode, "device_type_descriptors", "type", "firmware_version");
+    scale(rootNode, "device_personality_descriptors", "personality", "firmware_version");
+    scale(rootNode, "firmware_descriptors", "version");
+
+    catalog = objectMapper.writeValueAsBytes(rootNode);
+  }
+
+  @Benchmark
+  public List<ProductDescriptor> getProductDescriptors() {
+    return JsonReader.getProductDescriptors(new ByteArrayInputStream(catalog));
+  }
+
+  /*
+   * Appends copies - 1 copies of every descriptor of the array, with "#<copy>" appended to the
+   * given keys, so the copies link among each other like the originals.
+   */
+  private void scale(ObjectNode rootNode, String arrayName, String... keys) {
+    ArrayNode descriptors = (ArrayNode)rootNode.get(arrayName);
+    int originals = descriptors.size();
+
+    for (int copy = 1; copy < copies; copy++) {
+      for (int i = 0; i < originals; i++) {
+        ObjectNode descriptor = descriptors.get(i).deepCopy();
+
+        for (String key : keys) {
+          JsonNode value = descriptor.get(key);
+
+          if (value != null) {
+            descriptor.put(key, value.asText() + "#" + copy);
+          }
+        }
+
+        descriptors.add(descriptor);
+      }
+    }
+  }
+}
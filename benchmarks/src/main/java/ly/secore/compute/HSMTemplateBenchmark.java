@@ -0,0 +1,114 @@
+/*
+ * ly.secore.compute.HSMTemplateBenchmark
+ * Benchmark of the PKCS#11 templates and provisioning operations of the HSM
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The key search of the token with a template built per call, as the HardwareSecurityModule did
+ * before the templates were precompiled into HSMTemplates, against the precompiled template, and
+ * the provisioning operations that use them, run on the SoftwareCryptoBackend so the Java side of
+ * the HSM is measured without a token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HSMTemplateBenchmark {
+  private SoftwareCryptoBackend backend;
+  private long hSession;
+  private HardwareSecurityModule hsm;
+  private byte[] derivationInfo;
+
+  @Setup
+  public void setUp() throws Exception {
+    backend = new SoftwareCryptoBackend();
+    backend.provisionKeys();
+    hSession = backend.C_OpenSession(0, PKCS11Constants.CKF_SERIAL_SESSION, null, null);
+    hsm = new HardwareSecurityModule(backend, 0, 1);
+    derivationInfo = new byte[new Device.ManufacturingInfo().size() +
+                              new Device.ReincarnationInfo().size()];
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    backend.C_CloseSession(hSession);
+    hsm.close();
+  }
+
+  @Benchmark
+  public long[] adHocKeySearch() throws Exception {
+    return findKeys(template(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY,
+                             PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_EC,
+                             PKCS11Constants.CKA_LABEL, new String("KLD_AUTH")));
+  }
+
+  @Benchmark
+  public long[] precompiledKeySearch() throws Exception {
+    return findKeys(HSMTemplates.KLD_AUTH_KEY_SEARCH);
+  }
+
+  @Benchmark
+  public Device.ManufacturingResetSecret deriveMfgResetSecret() throws Exception {
+    return hsm.deriveMfgResetSecret(0x12345678);
+  }
+
+  @Benchmark
+  public HardwareSecurityModule.SetIncKeyContext setIncKeyStep1() throws Exception {
+    return hsm.setIncKeyStep1(derivationInfo);
+  }
+
+  @Benchmark
+  public byte[] getAppKeyKeyblock() throws Exception {
+    return hsm.getAppKeyKeyblock(derivationInfo);
+  }
+
+  private long[] findKeys(CK_ATTRIBUTE[] template) throws Exception {
+    long[] hKeys;
+
+    backend.C_FindObjectsInit(hSession, template, true);
+    hKeys = backend.C_FindObjects(hSession, 1);
+    backend.C_FindObjectsFinal(hSession);
+
+    return hKeys;
+  }
+
+  private static CK_ATTRIBUTE[] template(Object... typesAndValues) {
+    CK_ATTRIBUTE[] template = new CK_ATTRIBUTE[typesAndValues.length / 2];
+
+    for (int i = 0; i < template.length; i++) {
+      template[i] = new CK_ATTRIBUTE();
+      template[i].type = (Long)typesAndValues[2 * i];
+      template[i].pValue = typesAndValues[2 * i + 1];
+    }
+
+    return template;
+  }
+}
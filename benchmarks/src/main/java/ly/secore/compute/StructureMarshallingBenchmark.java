@@ -0,0 +1,121 @@
+/*
+ * ly.secore.compute.StructureMarshallingBenchmark
+ * Benchmark of the marshalling of the device information structures
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * JNA marshalling of ManufacturingInfo and ReincarnationInfo, once into a structure allocated per
+ * call like Device does, once into a structure that is reused, and the assembly of the
+ * reincarnation key derivation info from a fresh snapshot of a simulated device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructureMarshallingBenchmark {
+  private final ZonedDateTime now = ZonedDateTime.now();
+  private Device.ManufacturingInfo mfgInfo;
+  private Device.ReincarnationInfo incInfo;
+  private Device device;
+
+  @Setup
+  public void setUp() throws Exception {
+    mfgInfo = new Device.ManufacturingInfo();
+    incInfo = new Device.ReincarnationInfo();
+    device = new DeviceSimulator(1).connect();
+  }
+
+  @TearDown
+  public void tearDown() {
+    device.close();
+  }
+
+  @Benchmark
+  public Device.ManufacturingInfo newManufacturingInfo() {
+    Device.ManufacturingInfo info = new Device.ManufacturingInfo();
+
+    fill(info);
+    info.write();
+    info.read();
+
+    return info;
+  }
+
+  @Benchmark
+  public Device.ManufacturingInfo reusedManufacturingInfo() {
+    fill(mfgInfo);
+    mfgInfo.write();
+    mfgInfo.read();
+
+    return mfgInfo;
+  }
+
+  @Benchmark
+  public Device.ReincarnationInfo newReincarnationInfo() {
+    Device.ReincarnationInfo info = new Device.ReincarnationInfo();
+
+    fill(info);
+    info.write();
+    info.read();
+
+    return info;
+  }
+
+  @Benchmark
+  public Device.ReincarnationInfo reusedReincarnationInfo() {
+    fill(incInfo);
+    incInfo.write();
+    incInfo.read();
+
+    return incInfo;
+  }
+
+  /* Opening the service session drops the snapshot, so every call reads the device again */
+  @Benchmark
+  public byte[] reincarnationKeyDerivationInfo() throws Exception {
+    device.openServiceSession(1);
+
+    return device.getReincarnationKeyDerivationInfo();
+  }
+
+  private void fill(Device.ManufacturingInfo info) {
+    info.setDeviceClass(Device.ManufacturingInfo.DDM_885_DEVICE_CLASS);
+    info.setDeviceType(Device.ManufacturingInfo.DEVICE_TYPE_DDM_885_2_020326_06D);
+    info.setSerialNumber(1);
+    info.setTimeOfProduction(now);
+  }
+
+  private void fill(Device.ReincarnationInfo info) {
+    info.setTimeOfReincarnation(now);
+    info.setDevicePersonality(Device.DEVICE_PERSONALITY_PCI_POI);
+    info.setOperatingMode(Device.OPERATING_MODE_DEVELOPMENT);
+    info.setMasterKeyId(0x000DEB06);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * ly.secore.compute.UploadBenchmark
+ * Benchmark of chunked image uploads
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Chunked transfer of images to a simulated device without latency or bandwidth limit, which
+ * leaves the cost of the upload pipeline, the chunk callbacks and the JNA marshalling.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadBenchmark {
+  @Param({"4096", "262144"})
+  public int imageSize;
+
+  private byte[] image;
+  private ByteBuffer directImage;
+  private Device device;
+
+  @Setup
+  public void setUp() {
+    image = new byte[imageSize];
+    directImage = ByteBuffer.allocateDirect(imageSize);
+    device = new DeviceSimulator(1).connect();
+  }
+
+  @TearDown
+  public void tearDown() {
+    device.close();
+  }
+
+  @Benchmark
+  public Device.UploadStatistics applicationUpdate() throws Exception {
+    device.openServiceSession(1);
+    device.applicationUpdate(new ByteArrayInputStream(image));
+    device.closeServiceSession();
+
+    return device.getLastUploadStatistics();
+  }
+
+  @Benchmark
+  public void factoryFlash() throws Exception {
+    device.factoryFlash(directImage);
+  }
+}
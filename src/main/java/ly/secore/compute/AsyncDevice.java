@@ -0,0 +1,282 @@
+/*
+ * ly.secore.compute.AsyncDevice
+ * Asynchronous management of devices powered by compute secore.ly Firmware
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A Device whose operations return CompletableFutures instead of blocking the caller.  The calls
+ * of one device run one at a time, in the order they were made, on a serial executor backed by
+ * the given executor, which may be shared by any number of devices.  A thread of the executor is
+ * only taken while a call of the device is actually running, so a few threads can drive many
+ * devices, and nothing blocks while a device reboots: openWhenReady waits out its backoff on a
+ * delayed executor.
+ */
+public class AsyncDevice implements AutoCloseable {
+  public interface DeviceCall<T> {
+    T call(Device device) throws IOException;
+  }
+
+  public interface DeviceAction {
+    void run(Device device) throws IOException;
+  }
+
+  private final Device device;
+  private final SerialExecutor executor;
+
+  public AsyncDevice(Device device, Executor executor) {
+    this.device = device;
+    this.executor = new SerialExecutor(executor);
+  }
+
+  /* Connects to the device by name, without opening a service session. */
+  public static CompletableFuture<AsyncDevice> connect(Device.Connector connector,
+                                                       String name,
+                                                       Executor executor)
+  {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return new AsyncDevice(connector.connect(name), executor);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /*
+   * Like Device.openWhenReady, connects to the device and retries with bounded exponential
+   * backoff until a service session opens.  The backoff does not occupy a thread of the executor.
+   */
+  public static CompletableFuture<AsyncDevice> openWhenReady(Device.Connector connector,
+                                                             String name,
+                                                             long timeoutMillis,
+                                                             Executor executor)
+  {
+    CompletableFuture<AsyncDevice> result = new CompletableFuture<>();
+
+    tryOpen(connector,
+            name,
+            System.currentTimeMillis() + timeoutMillis,
+            timeoutMillis,
+            Device.READY_POLL_MIN_BACKOFF_MILLIS,
+            executor,
+            result);
+
+    return result;
+  }
+
+  private static void tryOpen(Device.Connector connector,
+                              String name,
+                              long deadline,
+                              long timeoutMillis,
+                              long backoff,
+                              Executor executor,
+                              CompletableFuture<AsyncDevice> result)
+  {
+    executor.execute(() -> {
+      Device device = null;
+
+      try {
+        device = connector.connect(name);
+        device.openServiceSession(1);
+        result.complete(new AsyncDevice(device, executor));
+        return;
+      }
+      catch (IOException e) {
+        if (device != null) {
+          device.close();
+        }
+
+        if (System.currentTimeMillis() + backoff > deadline) {
+          result.completeExceptionally(new IOException("Device at " + name +
+                                                       " not ready within " + timeoutMillis +
+                                                       " ms.", e));
+          return;
+        }
+      }
+      catch (RuntimeException e) {
+        if (device != null) {
+          device.close();
+        }
+
+        result.completeExceptionally(e);
+        return;
+      }
+
+      CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS).execute(() -> {
+        tryOpen(connector,
+                name,
+                deadline,
+                timeoutMillis,
+                Math.min(2 * backoff, Device.READY_POLL_MAX_BACKOFF_MILLIS),
+                executor,
+                result);
+      });
+    });
+  }
+
+  /*
+   * Runs the call on the device after all calls submitted before it.  Exceptions of the call
+   * complete the future exceptionally, wrapped in a CompletionException.
+   */
+  public <T> CompletableFuture<T> submit(DeviceCall<T> call) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return call.call(device);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  public CompletableFuture<Void> run(DeviceAction action) {
+    return submit(device -> {
+      action.run(device);
+      return null;
+    });
+  }
+
+  public CompletableFuture<Void> openServiceSession(int timeout) {
+    return run(device -> device.openServiceSession(timeout));
+  }
+
+  public CompletableFuture<Void> closeServiceSession() {
+    return run(Device::closeServiceSession);
+  }
+
+  public CompletableFuture<Void> requestDeferredReboot() {
+    return run(Device::requestDeferredReboot);
+  }
+
+  public CompletableFuture<Void> factoryFlash(ByteBuffer initialFirmwareImage) {
+    return run(device -> device.factoryFlash(initialFirmwareImage));
+  }
+
+  public CompletableFuture<Void> factoryFlash(InputStream initialFirmwareImage) {
+    return run(device -> device.factoryFlash(initialFirmwareImage));
+  }
+
+  public CompletableFuture<Device.UploadStatistics> applicationUpdate(InputStream image) {
+    return submit(device -> {
+      device.applicationUpdate(image);
+      return device.getLastUploadStatistics();
+    });
+  }
+
+  public CompletableFuture<Integer> getMfgResetSecretDerivationInput() {
+    return submit(Device::getMfgResetSecretDerivationInput);
+  }
+
+  public CompletableFuture<Void> lock(Device.ManufacturingResetSecret mfgReset) {
+    return run(device -> device.lock(mfgReset));
+  }
+
+  public CompletableFuture<Void> setAppKey(byte[] keyblock) {
+    return run(device -> device.setAppKey(keyblock));
+  }
+
+  public CompletableFuture<Void> setIncKeyStep1(HardwareSecurityModule.SetIncKeyContext ctx) {
+    return run(device -> device.setIncKeyStep1(ctx));
+  }
+
+  public CompletableFuture<Void> setIncKeyStep2(HardwareSecurityModule.SetIncKeyContext ctx) {
+    return run(device -> device.setIncKeyStep2(ctx));
+  }
+
+  public CompletableFuture<Void> setIncKeyStep3(HardwareSecurityModule.SetIncKeyContext ctx) {
+    return run(device -> device.setIncKeyStep3(ctx));
+  }
+
+  public CompletableFuture<Device.Snapshot> snapshot() {
+    return submit(Device::snapshot);
+  }
+
+  public CompletableFuture<byte[]> getReincarnationKeyDerivationInfo() {
+    return submit(Device::getReincarnationKeyDerivationInfo);
+  }
+
+  /* Closes the device after the calls submitted so far. */
+  public CompletableFuture<Void> closeAsync() {
+    return CompletableFuture.runAsync(device::close, executor);
+  }
+
+  /*
+   * Closes the device and waits until it is closed.  Must not be called from a call of the same
+   * device, which would wait for itself on the serial executor: such a call should use closeAsync
+   * instead, and gets an IllegalStateException.
+   */
+  public void close() {
+    if (executor.isRunningOnCurrentThread()) {
+      throw new IllegalStateException("AsyncDevice closed from one of its own calls");
+    }
+
+    closeAsync().join();
+  }
+
+  /*
+   * Runs the submitted tasks one after the other on the backing executor, a task is only handed
+   * to the backing executor once its predecessor has finished.
+   */
+  private static final class SerialExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor backingExecutor;
+    private Runnable active;
+    private volatile Thread runningThread;
+
+    SerialExecutor(Executor backingExecutor) {
+      this.backingExecutor = backingExecutor;
+    }
+
+    public synchronized void execute(Runnable task) {
+      tasks.add(() -> {
+        runningThread = Thread.currentThread();
+
+        try {
+          task.run();
+        }
+        finally {
+          runningThread = null;
+          scheduleNext();
+        }
+      });
+
+      if (active == null) {
+        scheduleNext();
+      }
+    }
+
+    boolean isRunningOnCurrentThread() {
+      return runningThread == Thread.currentThread();
+    }
+
+    private synchronized void scheduleNext() {
+      active = tasks.poll();
+
+      if (active != null) {
+        backingExecutor.execute(active);
+      }
+    }
+  }
+}
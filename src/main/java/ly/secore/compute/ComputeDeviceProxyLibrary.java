@@ -0,0 +1,139 @@
+/*
+ * ly.secore.compute.ComputeDeviceProxyLibrary
+ * Binding of the compute-device-proxy library
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+interface ComputeDeviceProxyLibrary extends Library {
+  static final String LIBRARY_NAME = "compute-device-proxy";
+
+  /* Selects how the proxy library is bound: "proxy" (default) goes through the JNA interface
+   * proxy for every call, "direct" binds the hot calls through JNA direct mapping. */
+  static final String BINDING_PROPERTY = "ly.secore.compute.proxyBinding";
+
+  ComputeDeviceProxyLibrary INSTANCE = load(System.getProperty(BINDING_PROPERTY, "proxy"));
+
+  static ComputeDeviceProxyLibrary load(String binding) {
+    switch (binding) {
+      case "proxy":
+        return (ComputeDeviceProxyLibrary)Native.load(LIBRARY_NAME,
+                                                      ComputeDeviceProxyLibrary.class);
+      case "direct":
+        return new DirectComputeDeviceProxyLibrary();
+      default:
+        throw new IllegalArgumentException("Unknown compute-device-proxy binding: " + binding);
+    }
+  }
+
+  static final int DDM_885_PRODUCT_KEY_LEN = 18;
+
+  interface compute_device_reset_cb_t extends Callback {
+    int invoke(Pointer app_data);
+  }
+
+  interface compute_device_vlog_cb_t extends Callback {
+    void invoke(Pointer app_data, int priority, Pointer fmt, Pointer va_args);
+  }
+
+  interface compute_device_get_image_chunk_cb_t extends Callback {
+    int invoke(Pointer app_data, Pointer buffer, int buffer_size);
+  }
+
+  Pointer compute_device_proxy_tcp_new(String  host,
+                                       String  service,
+                                       compute_device_vlog_cb_t vlog,
+                                       Pointer app_data);
+
+  Pointer compute_device_proxy_tty_new(String                    dev_tty_fn,
+                                       compute_device_vlog_cb_t  vlog,
+                                       compute_device_reset_cb_t reset,
+                                       Pointer                   app_data);
+
+  void compute_device_delete(Pointer compute_device);
+
+  int compute_device_proxy_tty_reset_cb(Pointer compute_device);
+
+  int compute_device_open_service_session(Pointer compute_device, int timeout);
+
+  int compute_device_close_service_session(Pointer compute_device);
+
+  int compute_device_request_deferred_reboot(Pointer compute_device);
+
+  int compute_device_factory_flash(Pointer                             compute_device,
+                                   compute_device_get_image_chunk_cb_t get_image_chunk);
+
+  int compute_device_get_mfg_reset_secret_derivation_input(
+          Pointer         compute_device,
+          IntByReference  mfg_reset_secret_derivation_input);
+
+  int compute_device_lock(Pointer                         compute_device,
+                          Device.ManufacturingResetSecret mfg_reset);
+
+  int compute_device_set_inc_key_step_1(
+          Pointer compute_device,
+          byte[] initiator_random,
+          byte[] initiator_auth_pub_key,
+          Memory responder_random,
+          Memory responder_eph_pub_key);
+
+  int compute_device_set_inc_key_step_2(
+          Pointer compute_device,
+          byte[] initiator_eph_pub_key,
+          byte[] initiator_signature,
+          Memory responder_cmac);
+
+  int compute_device_set_inc_key_step_3(
+          Pointer compute_device,
+          byte[] initiator_cmac,
+          byte[] initiator_keyblock);
+
+  int compute_device_get_manufacturing_info(
+          Pointer                  compute_device,
+          Device.ManufacturingInfo mfg_info);
+
+  int compute_device_get_reincarnation_info(
+          Pointer                  compute_device,
+          Device.ReincarnationInfo inc_info);
+
+  int compute_device_start_upload(
+          Pointer compute_device,
+          int     image_type,
+          String  name);
+
+  int compute_device_upload_chunk(
+          Pointer compute_device,
+          byte[]  chunk,
+          int     len);
+
+  int compute_device_finalize_upload(
+          Pointer compute_device);
+
+  int compute_device_set_app_key(
+          Pointer compute_device);
+
+  int compute_device_get_885_info(
+          Pointer        compute_device,
+          Memory         product_key,
+          IntByReference order_id);
+
+  int compute_device_get_lifecycle_info(
+          Pointer              compute_device,
+          Device.LifecycleInfo lifecycle_info);
+}
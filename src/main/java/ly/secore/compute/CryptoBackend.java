@@ -0,0 +1,98 @@
+/*
+ * ly.secore.compute.CryptoBackend
+ * Cryptographic token operations the Hardware Security Module is built upon
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.CK_TOKEN_INFO;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+
+/*
+ * The subset of the PKCS#11 API the HardwareSecurityModule uses, with the signatures of the IAIK
+ * wrapper.  PKCS11Backend forwards the calls to a PKCS#11 module, SoftwareCryptoBackend runs them
+ * in-process on the JCA for tests and benchmarks on machines without a token.
+ */
+public interface CryptoBackend {
+  void C_Initialize(Object pInitArgs, boolean useUtf8) throws PKCS11Exception;
+
+  void C_Finalize(Object pReserved) throws PKCS11Exception;
+
+  CK_TOKEN_INFO C_GetTokenInfo(long slotID) throws PKCS11Exception;
+
+  long C_OpenSession(long slotID, long flags, Object pApplication, Object Notify)
+      throws PKCS11Exception;
+
+  void C_CloseSession(long hSession) throws PKCS11Exception;
+
+  void C_FindObjectsInit(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception;
+
+  long[] C_FindObjects(long hSession, long ulMaxObjectCount) throws PKCS11Exception;
+
+  void C_FindObjectsFinal(long hSession) throws PKCS11Exception;
+
+  long C_CreateObject(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception;
+
+  void C_DestroyObject(long hSession, long hObject) throws PKCS11Exception;
+
+  void C_GetAttributeValue(long hSession, long hObject, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception;
+
+  void C_EncryptInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception;
+
+  byte[] C_Encrypt(long hSession, Object pParameter, byte[] pData) throws PKCS11Exception;
+
+  void C_DigestInit(long hSession, CK_MECHANISM pMechanism, boolean useUtf8)
+      throws PKCS11Exception;
+
+  void C_DigestUpdate(long hSession, byte[] pPart) throws PKCS11Exception;
+
+  byte[] C_DigestFinal(long hSession) throws PKCS11Exception;
+
+  void C_SignInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception;
+
+  byte[] C_Sign(long hSession, byte[] pData) throws PKCS11Exception;
+
+  void C_SignUpdate(long hSession, byte[] pPart) throws PKCS11Exception;
+
+  byte[] C_SignFinal(long hSession) throws PKCS11Exception;
+
+  void C_VerifyInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception;
+
+  void C_Verify(long hSession, byte[] pData, byte[] pSignature) throws PKCS11Exception;
+
+  long C_GenerateKey(long hSession, CK_MECHANISM pMechanism, CK_ATTRIBUTE[] pTemplate,
+                     boolean useUtf8)
+      throws PKCS11Exception;
+
+  long[] C_GenerateKeyPair(long hSession, CK_MECHANISM pMechanism,
+                           CK_ATTRIBUTE[] pPublicKeyTemplate, CK_ATTRIBUTE[] pPrivateKeyTemplate,
+                           boolean useUtf8)
+      throws PKCS11Exception;
+
+  byte[] C_WrapKey(long hSession, CK_MECHANISM pMechanism, long hWrappingKey, long hKey,
+                   boolean useUtf8)
+      throws PKCS11Exception;
+
+  long C_DeriveKey(long hSession, CK_MECHANISM pMechanism, long hBaseKey,
+                   CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception;
+
+  void C_GenerateRandom(long hSession, byte[] randomData) throws PKCS11Exception;
+}
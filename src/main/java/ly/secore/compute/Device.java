@@ -14,8 +14,6 @@
 
 package ly.secore.compute;
 
-import com.sun.jna.Callback;
-import com.sun.jna.Library;
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
@@ -26,6 +24,9 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.ZoneOffset;
@@ -335,9 +336,125 @@ public class Device implements AutoCloseable {
     public int orderId;
   }
 
+  /*
+   * Everything the device reports about itself, as read once per service session.  The snapshot
+   * cannot be modified: its getters return copies of the structures it holds.
+   */
+  public static final class Snapshot {
+    private final ManufacturingInfo manufacturingInfo;
+    private final ReincarnationInfo reincarnationInfo;
+    private final DDM885Info ddm885Info;
+    private final LifecycleInfo lifecycleInfo;
+    private final byte[] reincarnationKeyDerivationInfo;
+
+    private Snapshot(ManufacturingInfo manufacturingInfo,
+                     ReincarnationInfo reincarnationInfo,
+                     DDM885Info ddm885Info,
+                     LifecycleInfo lifecycleInfo)
+    {
+      this.manufacturingInfo = manufacturingInfo;
+      this.reincarnationInfo = reincarnationInfo;
+      this.ddm885Info = ddm885Info;
+      this.lifecycleInfo = lifecycleInfo;
+      this.reincarnationKeyDerivationInfo =
+          createReincarnationKeyDerivationInfo(manufacturingInfo, reincarnationInfo);
+    }
+
+    public ManufacturingInfo getManufacturingInfo() {
+      ManufacturingInfo copy = new ManufacturingInfo();
+
+      copy.device_class_uuid = manufacturingInfo.device_class_uuid.clone();
+      copy.time_of_production = manufacturingInfo.time_of_production;
+      copy.serial_number = manufacturingInfo.serial_number;
+      copy.device_type_id = manufacturingInfo.device_type_id;
+      copy.ecl = manufacturingInfo.ecl;
+      copy.mac_address = manufacturingInfo.mac_address.clone();
+
+      return copy;
+    }
+
+    public ReincarnationInfo getReincarnationInfo() {
+      ReincarnationInfo copy = new ReincarnationInfo();
+
+      copy.time_of_reincarnation = reincarnationInfo.time_of_reincarnation;
+      copy.device_personality = reincarnationInfo.device_personality;
+      copy.operating_mode = reincarnationInfo.operating_mode;
+      copy.master_key_id = reincarnationInfo.master_key_id;
+
+      return copy;
+    }
+
+    public DDM885Info getDDM885Info() {
+      DDM885Info copy = new DDM885Info();
+
+      copy.productKey = ddm885Info.productKey;
+      copy.orderId = ddm885Info.orderId;
+
+      return copy;
+    }
+
+    public LifecycleInfo getLifecycleInfo() {
+      LifecycleInfo copy = new LifecycleInfo(lifecycleInfo.state);
+
+      copy.timestamp = lifecycleInfo.timestamp;
+      copy.tamper_status = lifecycleInfo.tamper_status;
+
+      return copy;
+    }
+
+    public byte[] getReincarnationKeyDerivationInfo() {
+      return reincarnationKeyDerivationInfo.clone();
+    }
+  }
+
+  public static class UploadStatistics {
+    private final long bytes;
+    private final int chunks;
+    private final long nanos;
+
+    public UploadStatistics(long bytes, int chunks, long nanos) {
+      this.bytes = bytes;
+      this.chunks = chunks;
+      this.nanos = nanos;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public int getChunks() {
+      return chunks;
+    }
+
+    public long getElapsedNanos() {
+      return nanos;
+    }
+
+    public double getBytesPerSecond() {
+      return nanos > 0 ? bytes * 1e9 / nanos : 0.0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d bytes in %d chunks, %.1f ms, %.0f bytes/s",
+                           bytes, chunks, nanos / 1e6, getBytesPerSecond());
+    }
+  }
+
+  /*
+   * Opens a device by name, e.g. the path of its TTY.  Lets the provisioning code run on
+   * simulated devices as well as on the devices of the fixtures.
+   */
+  public interface Connector {
+    Device connect(String name) throws IOException;
+  }
+
+  public static final Connector TTY = Device::new;
+
   public Device(String host, String service) throws IOException {
+    library = ComputeDeviceProxyLibrary.INSTANCE;
     compute_device =
-        ComputeDeviceProxyLibrary.INSTANCE.compute_device_proxy_tcp_new(
+        library.compute_device_proxy_tcp_new(
             host,
             service,
             vlog_cb,
@@ -346,20 +463,23 @@ public class Device implements AutoCloseable {
     if (compute_device == null) {
         throw new IOException("compute_device_proxy_tcp_new() failed.");
     }
+
+    uploadChunkSize = TCP_IMAGE_CHUNK_SIZE;
   }
 
   public Device(String dev_tty_fn) throws IOException {
 
+    library = ComputeDeviceProxyLibrary.INSTANCE;
+
     ComputeDeviceProxyLibrary.compute_device_reset_cb_t reset_cb =
       new ComputeDeviceProxyLibrary.compute_device_reset_cb_t() {
         public int invoke(Pointer app_data) {
-          return ComputeDeviceProxyLibrary.INSTANCE
-                    .compute_device_proxy_tty_reset_cb(compute_device);
+          return library.compute_device_proxy_tty_reset_cb(compute_device);
         }
       };
 
     compute_device =
-        ComputeDeviceProxyLibrary.INSTANCE.compute_device_proxy_tty_new(
+        library.compute_device_proxy_tty_new(
             dev_tty_fn,
             vlog_cb,
             reset_cb,
@@ -368,12 +488,109 @@ public class Device implements AutoCloseable {
     if (compute_device == null) {
       throw new IOException("compute_device_proxy_tty_new() failed.");
     }
+
+    uploadChunkSize = TTY_IMAGE_CHUNK_SIZE;
+  }
+
+  /*
+   * A device behind another implementation of the compute-device-proxy contract, i.e. the
+   * DeviceSimulator of the tests.  The handle is passed back to that implementation only, Device
+   * never dereferences it.
+   */
+  Device(ComputeDeviceProxyLibrary library, Pointer compute_device, int uploadChunkSize) {
+    this.library = library;
+    this.compute_device = compute_device;
+    this.uploadChunkSize = uploadChunkSize;
+  }
+
+  /*
+   * Opens the device at dev_tty_fn and polls it with bounded exponential backoff until a service
+   * session opens, e.g. while the device reboots after a factory flash or a lock.
+   */
+  public static Device openWhenReady(String dev_tty_fn, long timeoutMillis)
+    throws IOException, InterruptedException
+  {
+    return openWhenReady(TTY, dev_tty_fn, timeoutMillis);
+  }
+
+  public static Device openWhenReady(Connector connector, String name, long timeoutMillis)
+    throws IOException, InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    long backoff = READY_POLL_MIN_BACKOFF_MILLIS;
+    IOException lastError;
+
+    while (true) {
+      Device device = null;
+
+      try {
+        device = connector.connect(name);
+        device.openServiceSession(1);
+        return device;
+      }
+      catch (IOException e) {
+        lastError = e;
+
+        if (device != null) {
+          device.close();
+        }
+      }
+
+      if (System.currentTimeMillis() + backoff > deadline) {
+        throw new IOException("Device at " + name + " not ready within " +
+                              timeoutMillis + " ms.", lastError);
+      }
+
+      Thread.sleep(backoff);
+      backoff = Math.min(2 * backoff, READY_POLL_MAX_BACKOFF_MILLIS);
+    }
+  }
+
+  /*
+   * Waits until the device at name, which was asked to reboot, is back in a lifecycle state other
+   * than fromState, and returns it with a service session open.  The reboot is recognized by the
+   * state it leads to: a device that reboots quickly is never seen gone, and a session opened
+   * before the reboot still reports fromState.
+   */
+  public static Device awaitLifecycleStateChange(Connector connector, String name,
+                                                 int fromState, long timeoutMillis)
+    throws IOException, InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    while (true) {
+      Device device = openWhenReady(connector, name,
+                                    Math.max(0, deadline - System.currentTimeMillis()));
+
+      try {
+        if (device.snapshot().getLifecycleInfo().state != fromState) {
+          return device;
+        }
+
+        device.closeServiceSession();
+      }
+      catch (IOException e) {
+        /* The device went away for its reboot while it was read */
+      }
+
+      device.close();
+
+      if (System.currentTimeMillis() + READY_POLL_MIN_BACKOFF_MILLIS > deadline) {
+        throw new IOException("Device at " + name + " still in lifecycle state " +
+                              LifecycleInfo.getStateName(fromState) + " after " +
+                              timeoutMillis + " ms.");
+      }
+
+      Thread.sleep(READY_POLL_MIN_BACKOFF_MILLIS);
+    }
   }
 
   public void openServiceSession(int timeout) throws IOException {
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    snapshot = null;
+
+    ret = library
         .compute_device_open_service_session(compute_device, timeout);
 
     if (ret < 0) {
@@ -384,7 +601,9 @@ public class Device implements AutoCloseable {
   public void closeServiceSession() throws IOException {
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE.compute_device_close_service_session(compute_device);
+    snapshot = null;
+
+    ret = library.compute_device_close_service_session(compute_device);
 
     if (ret < 0) {
       throw new IOException("compute_device_close_service_session() failed.");
@@ -394,7 +613,9 @@ public class Device implements AutoCloseable {
   public void requestDeferredReboot() throws IOException {
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE.compute_device_request_deferred_reboot(
+    snapshot = null;
+
+    ret = library.compute_device_request_deferred_reboot(
               compute_device);
 
     if (ret < 0) {
@@ -403,27 +624,34 @@ public class Device implements AutoCloseable {
   }
 
   public void factoryFlash(InputStream initialFirmwareImage) throws IOException {
-    int ret;
+    factoryFlash(createGetImageChunkCallback(initialFirmwareImage));
+  }
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE.compute_device_factory_flash(
-              compute_device,
-              createGetImageChunkCallback(initialFirmwareImage));
+  public void factoryFlash(ByteBuffer initialFirmwareImage) throws IOException {
+    factoryFlash(createGetImageChunkCallback(initialFirmwareImage));
+  }
 
-    if (ret < 0) {
-      throw new IOException("compute_device_factory_flash() failed.");
+  public void factoryFlash(Path initialFirmwareImage) throws IOException {
+    try (FileChannel channel = FileChannel.open(initialFirmwareImage, StandardOpenOption.READ)) {
+      factoryFlash(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
     }
   }
 
   public void applicationUpdate(InputStream applicationImage) throws IOException {
+    snapshot = null;
     upload(applicationImage, IMAGE_TYPE_APP0_UPDATE, null);
     requestDeferredReboot();
   }
 
+  public UploadStatistics getLastUploadStatistics() {
+    return lastUploadStatistics;
+  }
+
   public int getMfgResetSecretDerivationInput() throws IOException {
     IntByReference derivationInput = new IntByReference();
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE.
+    ret = library.
               compute_device_get_mfg_reset_secret_derivation_input(compute_device, derivationInput);
 
     if (ret < 0)
@@ -437,8 +665,10 @@ public class Device implements AutoCloseable {
   public void lock(ManufacturingResetSecret mfgReset) throws IOException {
     int ret = 0;
 
+    snapshot = null;
+
     mfgReset.write();
-    ret = ComputeDeviceProxyLibrary.INSTANCE.compute_device_lock(compute_device, mfgReset);
+    ret = library.compute_device_lock(compute_device, mfgReset);
 
     if (ret < 0) {
       throw new IOException("compute_device_lock() failed.");
@@ -450,9 +680,10 @@ public class Device implements AutoCloseable {
   {
     int ret;
 
+    snapshot = null;
     upload(new ByteArrayInputStream(keyblock), IMAGE_TYPE_KEY_BLOCK, null);
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE.compute_device_set_app_key(compute_device);
+    ret = library.compute_device_set_app_key(compute_device);
 
     if (ret < 0) {
       throw new IOException("compute_device_set_app_key() failed.");
@@ -466,7 +697,7 @@ public class Device implements AutoCloseable {
     Memory responderEphPubKey = new Memory(HardwareSecurityModule.SECP256R1_PUBLIC_KEY_LEN);
     int ret = 0;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_set_inc_key_step_1(compute_device,
                                                  ctx.initiatorRandom,
                                                  ctx.initiatorAuthPubKey,
@@ -486,7 +717,7 @@ public class Device implements AutoCloseable {
     Memory responderCMAC = new Memory(HardwareSecurityModule.AES_CMAC_LEN);
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_set_inc_key_step_2(compute_device,
                                                  ctx.initiatorEphPubKey,
                                                  ctx.initiatorSignature,
@@ -503,7 +734,8 @@ public class Device implements AutoCloseable {
   {
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    snapshot = null;
+    ret = library
               .compute_device_set_inc_key_step_3(compute_device,
                                                  ctx.initiatorCMAC,
                                                  ctx.initiatorKeyblock);
@@ -518,7 +750,7 @@ public class Device implements AutoCloseable {
     ManufacturingInfo mfgInfo = new ManufacturingInfo();
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_get_manufacturing_info(compute_device, mfgInfo);
 
     if (ret < 0) {
@@ -536,7 +768,7 @@ public class Device implements AutoCloseable {
     ReincarnationInfo incInfo = new ReincarnationInfo();
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_get_reincarnation_info(compute_device, incInfo);
 
     if (ret < 0) {
@@ -556,7 +788,7 @@ public class Device implements AutoCloseable {
     IntByReference orderId = new IntByReference();
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_get_885_info(compute_device, productKey, orderId);
 
     if (ret < 0) {
@@ -575,7 +807,7 @@ public class Device implements AutoCloseable {
     LifecycleInfo lifecycleInfo = new LifecycleInfo();
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_get_lifecycle_info(compute_device, lifecycleInfo);
 
     if (ret < 0) {
@@ -587,163 +819,105 @@ public class Device implements AutoCloseable {
     return lifecycleInfo;
   }
 
-  public byte[] getReincarnationKeyDerivationInfo()
+  /*
+   * Returns the device information of the current service session.  The device is only queried
+   * on the first call of a session and again after a call that changes the device state.
+   */
+  public Snapshot snapshot()
     throws IOException
   {
-    ManufacturingInfo mfgInfo = getManufacturingInfo();
-    ReincarnationInfo incInfo = getReincarnationInfo();
-    byte[] derivationInfo = new byte[mfgInfo.size() + incInfo.size()];
+    if (snapshot == null) {
+      snapshot = new Snapshot(getManufacturingInfo(),
+                              getReincarnationInfo(),
+                              getDDM885Info(),
+                              getLifecycleInfo());
+    }
 
-    System.arraycopy(mfgInfo.getPointer().getByteArray(0, mfgInfo.size()),
-                     0,
-                     derivationInfo,
-                     0,
-                     mfgInfo.size());
-    System.arraycopy(incInfo.getPointer().getByteArray(0, incInfo.size()),
-                     0,
-                     derivationInfo,
-                     mfgInfo.size(),
-                     incInfo.size());
+    return snapshot;
+  }
 
-    return derivationInfo;
+  public byte[] getReincarnationKeyDerivationInfo()
+    throws IOException
+  {
+    return snapshot().getReincarnationKeyDerivationInfo();
   }
 
   public void close()
   {
     if (compute_device != null) {
-      ComputeDeviceProxyLibrary.INSTANCE.compute_device_delete(compute_device);
+      library.compute_device_delete(compute_device);
       compute_device = null;
     }
   }
 
   private static final Logger LOGGER = LogManager.getLogger();
 
-  private interface CLibrary extends Library {
-    CLibrary INSTANCE = (CLibrary)Native.load("c", CLibrary.class);
-
-    int vsnprintf(byte[] buffer, int size, String format, Pointer va_list);
-  }
-
-  private interface ComputeDeviceProxyLibrary extends Library {
-    ComputeDeviceProxyLibrary INSTANCE =
-        (ComputeDeviceProxyLibrary)Native.load("compute-device-proxy",
-                                               ComputeDeviceProxyLibrary.class);
+  private static byte[] createReincarnationKeyDerivationInfo(ManufacturingInfo mfgInfo,
+                                                             ReincarnationInfo incInfo)
+  {
+    byte[] derivationInfo = new byte[mfgInfo.size() + incInfo.size()];
 
-    static final int DDM_885_PRODUCT_KEY_LEN = 18;
+    mfgInfo.getPointer().read(0, derivationInfo, 0, mfgInfo.size());
+    incInfo.getPointer().read(0, derivationInfo, mfgInfo.size(), incInfo.size());
 
-    interface compute_device_reset_cb_t extends Callback {
-      int invoke(Pointer app_data);
-    }
-
-    interface compute_device_vlog_cb_t extends Callback {
-      void invoke(Pointer app_data, int priority, String fmt, Pointer va_args);
-    }
+    return derivationInfo;
+  }
 
-    interface compute_device_get_image_chunk_cb_t extends Callback {
-      int invoke(Pointer app_data, Pointer buffer, int buffer_size);
+  private static final class CLibrary {
+    static {
+      Native.register(CLibrary.class, "c");
     }
 
-    Pointer compute_device_proxy_tcp_new(String  host,
-                                         String  service,
-                                         compute_device_vlog_cb_t vlog,
-                                         Pointer app_data);
-
-    Pointer compute_device_proxy_tty_new(String                    dev_tty_fn,
-                                         compute_device_vlog_cb_t  vlog,
-                                         compute_device_reset_cb_t reset,
-                                         Pointer                   app_data);
-
-    void compute_device_delete(Pointer compute_device);
-
-    int compute_device_proxy_tty_reset_cb(Pointer compute_device);
-
-    int compute_device_open_service_session(Pointer compute_device, int timeout);
-
-    int compute_device_close_service_session(Pointer compute_device);
-
-    int compute_device_request_deferred_reboot(Pointer compute_device);
-
-    int compute_device_factory_flash(Pointer                             compute_device,
-                                     compute_device_get_image_chunk_cb_t get_image_chunk);
-
-    int compute_device_get_mfg_reset_secret_derivation_input(
-            Pointer         compute_device,
-            IntByReference  mfg_reset_secret_derivation_input);
-
-    int compute_device_lock(Pointer                  compute_device,
-                            ManufacturingResetSecret mfg_reset);
-
-    int compute_device_set_inc_key_step_1(
-            Pointer compute_device,
-            byte[] initiator_random,
-            byte[] initiator_auth_pub_key,
-            Memory responder_random,
-            Memory responder_eph_pub_key);
-
-    int compute_device_set_inc_key_step_2(
-            Pointer compute_device,
-            byte[] initiator_eph_pub_key,
-            byte[] initiator_signature,
-            Memory responder_cmac);
-
-    int compute_device_set_inc_key_step_3(
-            Pointer compute_device,
-            byte[] initiator_cmac,
-            byte[] initiator_keyblock);
-
-    int compute_device_get_manufacturing_info(
-            Pointer           compute_device,
-            ManufacturingInfo mfg_info);
+    static native int vsnprintf(Pointer buffer, int size, Pointer format, Pointer va_list);
+  }
 
-    int compute_device_get_reincarnation_info(
-            Pointer           compute_device,
-            ReincarnationInfo inc_info);
+  private static final int LOG_BUFFER_SIZE = 2048;
 
-    int compute_device_start_upload(
-            Pointer compute_device,
-            int     image_type,
-            String  name);
+  /* The proxy logs from its transport thread, each thread formats into a buffer of its own. */
+  private static final ThreadLocal<Memory> LOG_BUFFER =
+      ThreadLocal.withInitial(() -> new Memory(LOG_BUFFER_SIZE));
 
-    int compute_device_upload_chunk(
-            Pointer compute_device,
-            byte[]  chunk,
-            int     len);
+  private final ComputeDeviceProxyLibrary library;
+  private Pointer compute_device;
+  private final int uploadChunkSize;
+  private UploadStatistics lastUploadStatistics;
+  private Snapshot snapshot;
 
-    int compute_device_finalize_upload(
-            Pointer compute_device);
+  private void factoryFlash(
+      ComputeDeviceProxyLibrary.compute_device_get_image_chunk_cb_t getImageChunk)
+    throws IOException
+  {
+    int ret;
 
-    int compute_device_set_app_key(
-            Pointer compute_device);
+    snapshot = null;
 
-    int compute_device_get_885_info(
-            Pointer        compute_device,
-            Memory         product_key,
-            IntByReference order_id);
+    ret = library.compute_device_factory_flash(compute_device,
+                                                                         getImageChunk);
 
-    int compute_device_get_lifecycle_info(
-            Pointer       compute_device,
-            LifecycleInfo lifecycle_info);
+    if (ret < 0) {
+      throw new IOException("compute_device_factory_flash() failed.");
+    }
   }
 
-  private Pointer compute_device;
-
   private ComputeDeviceProxyLibrary.compute_device_get_image_chunk_cb_t
               createGetImageChunkCallback(InputStream image)
   {
     return new ComputeDeviceProxyLibrary.compute_device_get_image_chunk_cb_t()
     {
+      private byte[] buf = new byte[0];
+
       public int invoke(Pointer app_data, Pointer buffer, int buffer_size) {
         int bytesRead = -1;
         try {
-          byte[] buf = new byte[buffer_size];
-
-          bytesRead = image.read(buf);
+          if (buf.length < buffer_size) {
+            buf = new byte[buffer_size];
+          }
 
-          System.out.printf("Read %d bytes from image stream\n", bytesRead);
+          bytesRead = image.read(buf, 0, buffer_size);
 
           if (bytesRead > 0)
           {
-            buffer.getByteBuffer(0, bytesRead).put(buf, 0, bytesRead);
+            buffer.write(0, buf, 0, bytesRead);
           }
 
           if (bytesRead == -1)
@@ -760,7 +934,51 @@ public class Device implements AutoCloseable {
     };
   }
 
-  private static final int MAX_IMAGE_CHUNK_SIZE   = 192;
+  /* Copies straight from the (typically memory-mapped or direct) image into the native chunk
+   * buffer.  The proxy hands out the same chunk buffer on every call, so the view on it is only
+   * rebuilt if the buffer moves or grows. */
+  private ComputeDeviceProxyLibrary.compute_device_get_image_chunk_cb_t
+              createGetImageChunkCallback(ByteBuffer image)
+  {
+    ByteBuffer source = image.duplicate();
+
+    return new ComputeDeviceProxyLibrary.compute_device_get_image_chunk_cb_t()
+    {
+      private ByteBuffer target;
+      private long targetAddress;
+
+      public int invoke(Pointer app_data, Pointer buffer, int buffer_size) {
+        int len = Math.min(buffer_size, source.remaining());
+        int limit = source.limit();
+        long address = Pointer.nativeValue(buffer);
+
+        if (len <= 0) {
+          return 0;
+        }
+
+        if (target == null || targetAddress != address || target.capacity() < len) {
+          target = buffer.getByteBuffer(0, buffer_size);
+          targetAddress = address;
+        }
+
+        target.clear();
+        source.limit(source.position() + len);
+        target.put(source);
+        source.limit(limit);
+
+        return len;
+      }
+    };
+  }
+
+  /* The serial link of the TTY proxy limits a chunk to a single frame, the TCP proxy lets the
+   * network stack segment larger chunks. */
+  static final int TTY_IMAGE_CHUNK_SIZE           = 192;
+  private static final int TCP_IMAGE_CHUNK_SIZE   = 1024;
+  private static final int UPLOAD_WINDOW          = 8;
+
+  static final long READY_POLL_MIN_BACKOFF_MILLIS = 100;
+  static final long READY_POLL_MAX_BACKOFF_MILLIS = 2000;
   /* private static final int IMAGE_TYPE_FW_UPDATE   = 1;*/
   private static final int IMAGE_TYPE_APP0_UPDATE = 2;
   /* private static final int IMAGE_TYPE_DEVCFG      = 3;
@@ -773,9 +991,10 @@ public class Device implements AutoCloseable {
   private void upload(InputStream data, int imageType, String name)
     throws IOException
   {
+    UploadPipeline pipeline = new UploadPipeline(uploadChunkSize, UPLOAD_WINDOW);
     int ret;
 
-    ret = ComputeDeviceProxyLibrary.INSTANCE
+    ret = library
               .compute_device_start_upload(compute_device, imageType, name);
 
     if (ret != 0) {
@@ -783,28 +1002,17 @@ public class Device implements AutoCloseable {
     }
 
     try {
-      byte[] chunk = new byte[MAX_IMAGE_CHUNK_SIZE];
-      int size;
-
-      while (true)
-        {
-          size = data.read(chunk);
-
-          if (size <= 0)
-          {
-            break;
-          }
-
-          ret = ComputeDeviceProxyLibrary.INSTANCE
-                    .compute_device_upload_chunk(compute_device, chunk, size);
-
-          if (ret != 0) {
-            throw new IOException("compute_device_upload_chunk() failed.");
-          }
+      lastUploadStatistics = pipeline.run(data, (chunk, size) -> {
+        if (library
+                .compute_device_upload_chunk(compute_device, chunk, size) != 0) {
+          throw new IOException("compute_device_upload_chunk() failed.");
         }
+      });
+
+      LOGGER.info("Uploaded image type {}: {}", imageType, lastUploadStatistics);
     }
     finally {
-      ret = ComputeDeviceProxyLibrary.INSTANCE
+      ret = library
                 .compute_device_finalize_upload(compute_device);
 
       if (ret != 0) {
@@ -815,8 +1023,8 @@ public class Device implements AutoCloseable {
 
   private final ComputeDeviceProxyLibrary.compute_device_vlog_cb_t vlog_cb =
       new ComputeDeviceProxyLibrary.compute_device_vlog_cb_t() {
-        public void invoke(Pointer app_data, int priority, String fmt, Pointer va_args) {
-          byte[] buffer = new byte[2048];
+        public void invoke(Pointer app_data, int priority, Pointer fmt, Pointer va_args) {
+          Memory buffer;
           Level level;
 
           switch (priority) {
@@ -841,9 +1049,14 @@ public class Device implements AutoCloseable {
               break;
           }
 
-          CLibrary.INSTANCE.vsnprintf(buffer, buffer.length, fmt, va_args);
+          if (!LOGGER.isEnabled(level)) {
+            return;
+          }
+
+          buffer = LOG_BUFFER.get();
+          CLibrary.vsnprintf(buffer, LOG_BUFFER_SIZE, fmt, va_args);
 
-          LOGGER.atLevel(level).log(new String(buffer));
+          LOGGER.atLevel(level).log(buffer.getString(0));
         }
       };
 }
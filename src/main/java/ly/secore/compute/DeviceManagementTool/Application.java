@@ -2,24 +2,34 @@ package ly.secore.compute.DeviceManagementTool;
 
 import com.formdev.flatlaf.FlatLightLaf;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.EventObject;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.swing.SwingUtilities;
-import javax.swing.SwingWorker;
+import ly.secore.compute.AsyncDevice;
 import ly.secore.compute.Device;
 import ly.secore.compute.DeviceManagementTool.DataModel.DeviceInformation;
-import ly.secore.compute.DeviceManagementTool.DataModel.JsonReader;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalog;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalogSnapshot;
 import ly.secore.compute.DeviceManagementTool.DataModel.ProductDescriptor;
 import ly.secore.compute.DeviceManagementTool.Event.ConnectToDeviceRequested;
+import ly.secore.compute.DeviceManagementTool.Event.DeviceReady;
 import ly.secore.compute.DeviceManagementTool.Event.DisconnectFromDeviceRequested;
 import ly.secore.compute.DeviceManagementTool.Event.EventBus;
 import ly.secore.compute.DeviceManagementTool.Event.FactoryFlashRequested;
 import ly.secore.compute.DeviceManagementTool.Event.Listener;
 import ly.secore.compute.DeviceManagementTool.GUI.MainWindow;
+import ly.secore.compute.Provisioning.FleetOrchestrator;
+import ly.secore.compute.Provisioning.UartPathWatcher;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -29,75 +39,166 @@ import org.apache.logging.log4j.Logger;
 
 public class Application implements Listener {
     private static final Logger logger = LogManager.getLogger(Application.class);
+    private static final int DEVICE_THREADS = 2;
+    private static final long READY_TIMEOUT_MILLIS = 60000;
+    /* The device information is shared with the GUI, so it is only ever changed on the EDT */
+    private static final Executor EDT = SwingUtilities::invokeLater;
+
+    /* File of the product catalog, e.g. as exported by the ERP.  Changes apply while running. */
+    static final String PRODUCT_CATALOG_PROPERTY = "ly.secore.compute.productCatalog";
+    /* Directory of the binary snapshots of the catalogs for fast startup, one per catalog */
+    static final String PRODUCT_CATALOG_SNAPSHOT_DIRECTORY_PROPERTY =
+        "ly.secore.compute.productCatalogSnapshotDirectory";
     private MainWindow mainWindow;
-    private Device computeDevice;
+    private final ExecutorService deviceExecutor =
+        Executors.newFixedThreadPool(DEVICE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "device-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private volatile AsyncDevice computeDevice;
+    private UartPathWatcher uartPathWatcher;
+    private ProductCatalogWatcher productCatalogWatcher;
+    private ProductCatalog bundledProductCatalog;
     private DeviceInformation deviceInformation = new DeviceInformation();
     private EventBus eventBus = new EventBus();
     private String uartPath;
+    private final Map<String, ByteBuffer> initialFirmwareImages = new HashMap<>();
 
     public Application() {
         eventBus = new EventBus();
         eventBus.addListener(this);
         mainWindow = new MainWindow(eventBus);
+        startUartPathWatcher();
         eventBus.updateUartPaths(this, getUartPaths());
-        eventBus.updateProductDescriptors(this, getProductDescriptors());
+        startProductCatalogWatcher();
+        eventBus.updateProductDescriptors(this, getProductCatalog());
         eventBus.updateDeviceInformation(this, deviceInformation);
         mainWindow.setVisible(true);
     }
 
-    protected void connectToDevice() {
+    /*
+     * Connects to the device at uartPath.  A device that does not open a service session has no
+     * firmware yet and is reported in the Manufactured state.
+     */
+    protected CompletableFuture<Void> connectToDevice() {
         if (computeDevice != null) {
             throw new IllegalStateException("Already connected to a device");
         }
 
-        try {
-            computeDevice = new Device(uartPath);
-            computeDevice.openServiceSession(1);
-            deviceInformation.setDeviceConnected(true);
-            deviceInformation.setManufacturingInfo(computeDevice.getManufacturingInfo());
-            deviceInformation.setReincarnationInfo(computeDevice.getReincarnationInfo());
-            deviceInformation.setDDM885Info(computeDevice.getDDM885Info());
-            deviceInformation.setLifecycleInfo(computeDevice.getLifecycleInfo());
-        } catch (IOException e) {
-            if (computeDevice != null) {
-                computeDevice.close();
+        return AsyncDevice.connect(Device.TTY, uartPath, deviceExecutor)
+            .thenCompose(device -> {
+                computeDevice = device;
+                return device.openServiceSession(1).thenCompose(v -> device.snapshot());
+            })
+            .thenAcceptAsync(this::setConnectedDeviceInformation, EDT)
+            .exceptionallyCompose(e -> {
+                AsyncDevice device = computeDevice;
+                CompletableFuture<Void> closed = device != null ? device.closeAsync()
+                                                                : CompletableFuture.completedFuture(null);
+
                 computeDevice = null;
-            }
-            try {
-                computeDevice = new Device(uartPath);
+
+                return closed.thenCompose(v -> connectToManufacturedDevice());
+            });
+    }
+
+    /*
+     * Reconnects to the device at uartPath while it reboots after a factory flash.  Polls with
+     * bounded backoff until a service session opens, without holding a thread of the executor
+     * in between, and publishes the outcome as a DeviceReady event on the EDT.  A device that
+     * does not come up in time is reported in the Manufactured state.
+     */
+    protected CompletableFuture<Void> reconnectAfterFactoryFlash(long flashStartNanos) {
+        Path readyUartPath = Path.of(uartPath);
+
+        return AsyncDevice.openWhenReady(Device.TTY, uartPath, READY_TIMEOUT_MILLIS, deviceExecutor)
+            .thenCompose(device -> {
+                computeDevice = device;
+                return device.snapshot();
+            })
+            .thenApplyAsync(snapshot -> {
+                setConnectedDeviceInformation(snapshot);
+                return true;
+            }, EDT)
+            .exceptionallyCompose(e -> {
+                AsyncDevice device = computeDevice;
+                CompletableFuture<Void> closed = device != null ? device.closeAsync()
+                                                                : CompletableFuture.completedFuture(null);
+
+                logger.error("Device not ready after factory flash: " + e.getMessage());
+                computeDevice = null;
+
+                return closed.thenCompose(v -> connectToManufacturedDevice())
+                             .thenApply(v -> false);
+            })
+            .thenAccept(serviceSessionOpen -> {
+                long latencyMillis = (System.nanoTime() - flashStartNanos) / 1000000;
+
+                SwingUtilities.invokeLater(() -> eventBus.deviceReady(this,
+                                                                      readyUartPath,
+                                                                      serviceSessionOpen,
+                                                                      latencyMillis));
+            });
+    }
+
+    private void setConnectedDeviceInformation(Device.Snapshot snapshot) {
+        deviceInformation.setDeviceConnected(true);
+        deviceInformation.setManufacturingInfo(snapshot.getManufacturingInfo());
+        deviceInformation.setReincarnationInfo(snapshot.getReincarnationInfo());
+        deviceInformation.setDDM885Info(snapshot.getDDM885Info());
+        deviceInformation.setLifecycleInfo(snapshot.getLifecycleInfo());
+    }
+
+    private CompletableFuture<Void> connectToManufacturedDevice() {
+        return AsyncDevice.connect(Device.TTY, uartPath, deviceExecutor)
+            .handleAsync((manufacturedDevice, e) -> {
+                if (e != null) {
+                    deviceInformation.setDeviceConnected(false);
+                    return null;
+                }
+
+                computeDevice = manufacturedDevice;
                 deviceInformation.setDeviceConnected(true);
                 deviceInformation.setManufacturingInfo(null);
                 deviceInformation.setReincarnationInfo(null);
                 deviceInformation.setDDM885Info(null);
                 deviceInformation.setLifecycleInfo(new Device.LifecycleInfo(
                     Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURED));
-            } catch (IOException e2) {
-                computeDevice = null;
-                deviceInformation.setDeviceConnected(false);
-            }
-        }
+                return null;
+            }, EDT);
     }
 
-    public void disconnectFromDevice() {
-        if (computeDevice != null &&
-            deviceInformation.getLifecycleInfo().state !=
-                Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURED)
-        {
-            try {
-                computeDevice.closeServiceSession();
-            } catch (IOException e) {
-                logger.error("Failed to close service session: " + e.getMessage());
-            }
+    public CompletableFuture<Void> disconnectFromDevice() {
+        AsyncDevice device = computeDevice;
+        CompletableFuture<Void> closed;
+
+        if (device == null) {
+            return CompletableFuture.completedFuture(null);
         }
 
-        computeDevice.close();
         computeDevice = null;
 
-        deviceInformation.setDeviceConnected(false);
-        deviceInformation.setManufacturingInfo(null);
-        deviceInformation.setReincarnationInfo(null);
-        deviceInformation.setDDM885Info(null);
-        deviceInformation.setLifecycleInfo(null);
+        if (deviceInformation.getLifecycleInfo().state !=
+                Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURED)
+        {
+            closed = device.closeServiceSession()
+                .exceptionally(e -> {
+                    logger.error("Failed to close service session: " + e.getMessage());
+                    return null;
+                })
+                .thenCompose(v -> device.closeAsync());
+        } else {
+            closed = device.closeAsync();
+        }
+
+        return closed.thenRunAsync(() -> {
+            deviceInformation.setDeviceConnected(false);
+            deviceInformation.setManufacturingInfo(null);
+            deviceInformation.setReincarnationInfo(null);
+            deviceInformation.setDDM885Info(null);
+            deviceInformation.setLifecycleInfo(null);
+        }, EDT);
     }
 
     public void actionRequested(EventObject requestEvent)
@@ -108,71 +209,47 @@ public class Application implements Listener {
                 uartPath = connectRequest.getUartPath().toString();
 
                 mainWindow.showBusyOverlay(true);
-
-                SwingWorker<Void, Void> worker = new SwingWorker<>() {
-                    @Override
-                    protected Void doInBackground() throws Exception {
-                        connectToDevice();
-                        return null;
-                    }
-
-                    @Override
-                    protected void done() {
-                        eventBus.updateDeviceInformation(this, deviceInformation);
-                        mainWindow.showBusyOverlay(false);
-                    }
-                };
-
-                worker.execute();
+                updateDeviceInformationWhenDone(connectToDevice());
             } else if (requestEvent instanceof DisconnectFromDeviceRequested) {
-                if (computeDevice != null &&
-                    deviceInformation.getLifecycleInfo().state !=
-                        Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURED)
-                {
-                    computeDevice.closeServiceSession();
+                updateDeviceInformationWhenDone(disconnectFromDevice());
+            } else if (requestEvent instanceof FactoryFlashRequested) {
+                FactoryFlashRequested factoryFlashRequest = (FactoryFlashRequested)requestEvent;
+                AsyncDevice device = computeDevice;
+                long flashStartNanos = System.nanoTime();
+
+                if (device == null) {
+                    logger.warn("Factory flash requested without a connected device");
+                    return;
                 }
 
-                computeDevice.close();
                 computeDevice = null;
+                mainWindow.showBusyOverlay(true);
 
-                deviceInformation.setDeviceConnected(false);
-                deviceInformation.setManufacturingInfo(null);
-                deviceInformation.setReincarnationInfo(null);
-                deviceInformation.setDDM885Info(null);
-                deviceInformation.setLifecycleInfo(null);
+                updateDeviceInformationWhenDone(
+                    device.run(d -> d.factoryFlash(getInitialFirmwareImage(
+                            factoryFlashRequest.getInitialFileName())))
+                        .handle((v, e) -> {
+                            if (e != null) {
+                                logger.error("Factory flashing failed: " + e.getMessage());
+                            }
 
-                eventBus.updateDeviceInformation(this, deviceInformation);
-            } else if (requestEvent instanceof FactoryFlashRequested) {
-                mainWindow.showBusyOverlay(true);
+                            return e == null;
+                        })
+                        .thenCompose(flashed -> device.closeAsync().thenCompose(v -> {
+                            /* A device without new firmware does not reboot into it */
+                            return flashed ? reconnectAfterFactoryFlash(flashStartNanos)
+                                           : connectToManufacturedDevice();
+                        })));
+            } else if (requestEvent instanceof DeviceReady) {
+                DeviceReady deviceReady = (DeviceReady)requestEvent;
 
-                SwingWorker<Void, Void> worker = new SwingWorker<>() {
-                    @Override
-                    protected Void doInBackground() {
-                        FactoryFlashRequested factoryFlashRequest =
-                            (FactoryFlashRequested)requestEvent;
-
-                        try {
-                            computeDevice.factoryFlash(getClass()
-                                .getResourceAsStream(factoryFlashRequest.getInitialFileName()));
-                        } catch (IOException e) {
-                            System.err.println("Factory flashing failed: " + e.getMessage());
-                        }
-
-                        computeDevice.close();
-                        computeDevice = null;
-
-                        return null;
-                    }
-
-                    @Override
-                    protected void done() {
-                        connectToDevice();
-                        eventBus.updateDeviceInformation(this, deviceInformation);
-                        mainWindow.showBusyOverlay(false);
-                    }
-                };
-
-                worker.execute();
+                if (deviceReady.isServiceSessionOpen()) {
+                    logger.info("Device at " + deviceReady.getUartPath() + " ready " +
+                                deviceReady.getLatencyMillis() + " ms after factory flash");
+                } else {
+                    logger.warn("Device at " + deviceReady.getUartPath() + " not ready " +
+                                deviceReady.getLatencyMillis() + " ms after factory flash");
+                }
             }
         }
         catch (Exception e) {
@@ -180,21 +257,148 @@ public class Application implements Listener {
         }
     }
 
+    /*
+     * Publishes the device information on the EDT once the device operation has finished, whether
+     * it succeeded or not.
+     */
+    private void updateDeviceInformationWhenDone(CompletableFuture<Void> operation) {
+        operation.whenComplete((result, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                logger.error("Device operation failed: " + e.getMessage());
+            }
+
+            eventBus.updateDeviceInformation(this, deviceInformation);
+            mainWindow.showBusyOverlay(false);
+        }));
+    }
+
     public Path[] getUartPaths() {
-        try (Stream<Path> stream = Files.find(Paths.get("/dev"),
-                                              1,
-                                              (path, attrs) -> {
-                                                  return path.toString().startsWith("/dev/ttyDDM-");
-                                              })) {
-            return stream.collect(Collectors.toList()).toArray(new Path[0]);
+        if (uartPathWatcher != null) {
+            return uartPathWatcher.getUartPaths();
+        }
+
+        return FleetOrchestrator.findUartPaths();
+    }
+
+    /*
+     * Publishes fixtures on the event bus as they are plugged in and out.  Without a watch
+     * service for /dev the list of fixtures is only read once at startup.
+     */
+    private void startUartPathWatcher() {
+        try {
+            uartPathWatcher = new UartPathWatcher(new UartPathWatcher.Listener() {
+                public void uartPathAdded(Path uartPath) {
+                    SwingUtilities.invokeLater(
+                        () -> eventBus.uartPathAdded(Application.this, uartPath));
+                }
+
+                public void uartPathRemoved(Path uartPath) {
+                    SwingUtilities.invokeLater(
+                        () -> eventBus.uartPathRemoved(Application.this, uartPath));
+                }
+            });
         } catch (IOException e) {
-            throw new RuntimeException("Failed to obtain list of /dev/ttyDDM-* devices", e);
+            logger.warn("Hot-plug detection of fixtures unavailable: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Initial firmware images are read once into direct memory, repeated factory flashes copy
+     * from there straight into the buffers of the native proxy.
+     */
+    protected synchronized ByteBuffer getInitialFirmwareImage(String initialFileName)
+        throws IOException
+    {
+        ByteBuffer image = initialFirmwareImages.get(initialFileName);
+
+        if (image == null) {
+            try (InputStream stream = getClass().getResourceAsStream(initialFileName)) {
+                if (stream == null) {
+                    throw new IOException("Initial firmware image " + initialFileName +
+                                          " not found");
+                }
+
+                byte[] content = stream.readAllBytes();
+
+                image = ByteBuffer.allocateDirect(content.length);
+                image.put(content).flip();
+            }
+
+            initialFirmwareImages.put(initialFileName, image);
         }
+
+        return image.asReadOnlyBuffer();
     }
 
     public ProductDescriptor[] getProductDescriptors() {
-        return JsonReader.getProductDescriptors(getClass()
-            .getResourceAsStream("product-descriptors.json")).toArray(new ProductDescriptor[0]);
+        return getProductCatalog().getProductDescriptors();
+    }
+
+    /*
+     * The catalog of the file named by the PRODUCT_CATALOG_PROPERTY as of now, or the catalog
+     * bundled with the tool.
+     */
+    public ProductCatalog getProductCatalog() {
+        if (productCatalogWatcher != null) {
+            return productCatalogWatcher.getProductCatalog();
+        }
+
+        if (bundledProductCatalog == null) {
+            try (InputStream stream = getClass().getResourceAsStream("product-descriptors.json")) {
+                bundledProductCatalog = ProductCatalogSnapshot.load(
+                    stream.readAllBytes(), getProductCatalogSnapshotPath(null));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read bundled product catalog", e);
+            }
+        }
+
+        return bundledProductCatalog;
+    }
+
+    /*
+     * The catalog is compiled into a binary snapshot on first use, later launches load the
+     * snapshot as long as the content hash of the catalog matches.  Each catalog file has a
+     * snapshot of its own, named after the hash of its real path, the bundled catalog (null)
+     * has one as well, so switching between them does not rewrite the snapshot each time.
+     */
+    static Path getProductCatalogSnapshotPath(Path catalogPath) throws IOException {
+        String directoryName = System.getProperty(PRODUCT_CATALOG_SNAPSHOT_DIRECTORY_PROPERTY);
+        Path directory = directoryName != null
+            ? Path.of(directoryName)
+            : Path.of(System.getProperty("user.home"), ".cache", "ly.secore.compute");
+        String source = "bundled";
+
+        if (catalogPath != null) {
+            byte[] pathHash = ProductCatalogSnapshot.contentHash(
+                catalogPath.toRealPath().toString().getBytes(StandardCharsets.UTF_8));
+
+            source = HexFormat.of().formatHex(pathHash, 0, 8);
+        }
+
+        return directory.resolve("product-catalog-" + source + ".snapshot");
+    }
+
+    /*
+     * Reloads the catalog whenever its file changes and publishes each valid update on the event
+     * bus, so the catalog changes without a restart.
+     */
+    private void startProductCatalogWatcher() {
+        String catalogFileName = System.getProperty(PRODUCT_CATALOG_PROPERTY);
+
+        if (catalogFileName == null) {
+            return;
+        }
+
+        try {
+            productCatalogWatcher = new ProductCatalogWatcher(
+                Path.of(catalogFileName),
+                getProductCatalogSnapshotPath(Path.of(catalogFileName)),
+                productCatalog -> SwingUtilities.invokeLater(
+                    () -> eventBus.updateProductDescriptors(Application.this, productCatalog)));
+        } catch (IOException e) {
+            logger.error("Using the bundled product catalog, " + catalogFileName +
+                         " is not valid: " + e.getMessage());
+        }
     }
 
     public static void main(String[] args) {
@@ -1,77 +1,194 @@
 package ly.secore.compute.DeviceManagementTool.DataModel;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Map;
+import java.util.function.Consumer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 
 /**
- * Reader class for reading JSON files.
- * This class uses Jackson to read a JSON file and print its contents.
+ * Reader of the product descriptor catalog.
+ * Binds the descriptor sections of the JSON catalog with Jackson and links each product to its
+ * device type and personality, and those to their firmware and application.
+ *
+ * The catalog is parsed as a token stream, one descriptor at a time, so neither the document
+ * nor a tree of it is ever held in memory besides the descriptors themselves.  Sections the
+ * reader does not know are skipped.
  */
 public class JsonReader {
-    private static class DatabaseContent {
-        public List<ProductDescriptor> productDescriptors;
-        public List<DeviceTypeDescriptor> deviceTypeDescriptors;
-        public List<DevicePersonalityDescriptor> devicePersonalityDescriptors;
-        public List<FirmwareDescriptor> firmwareDescriptors;
-        public List<ApplicationDescriptor> applicationDescriptors;
-    };
+    // Mappers and readers are thread-safe, so they are configured once and shared by all calls
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+    private static final ObjectReader PRODUCT_DESCRIPTOR_READER =
+        OBJECT_MAPPER.readerFor(ProductDescriptor.class);
+    private static final ObjectReader DEVICE_TYPE_DESCRIPTOR_READER =
+        OBJECT_MAPPER.readerFor(DeviceTypeDescriptor.class);
+    private static final ObjectReader DEVICE_PERSONALITY_DESCRIPTOR_READER =
+        OBJECT_MAPPER.readerFor(DevicePersonalityDescriptor.class);
+    private static final ObjectReader FIRMWARE_DESCRIPTOR_READER =
+        OBJECT_MAPPER.readerFor(FirmwareDescriptor.class);
+    private static final ObjectReader APPLICATION_DESCRIPTOR_READER =
+        OBJECT_MAPPER.readerFor(ApplicationDescriptor.class);
+
+    /**
+     * The linked descriptor sections of a catalog.  Device types and personalities are listed in
+     * catalog order, whether a product refers to them or not.
+     */
+    public static class Sections {
+        private final List<ProductDescriptor> productDescriptors;
+        private final List<DeviceTypeDescriptor> deviceTypeDescriptors;
+        private final List<DevicePersonalityDescriptor> devicePersonalityDescriptors;
+
+        Sections(List<ProductDescriptor> productDescriptors,
+                 List<DeviceTypeDescriptor> deviceTypeDescriptors,
+                 List<DevicePersonalityDescriptor> devicePersonalityDescriptors) {
+            this.productDescriptors = productDescriptors;
+            this.deviceTypeDescriptors = deviceTypeDescriptors;
+            this.devicePersonalityDescriptors = devicePersonalityDescriptors;
+        }
+
+        public List<ProductDescriptor> getProductDescriptors() {
+            return productDescriptors;
+        }
+
+        public List<DeviceTypeDescriptor> getDeviceTypeDescriptors() {
+            return deviceTypeDescriptors;
+        }
+
+        public List<DevicePersonalityDescriptor> getDevicePersonalityDescriptors() {
+            return devicePersonalityDescriptors;
+        }
+    }
 
     public static List<ProductDescriptor> getProductDescriptors(InputStream jsonInputStream) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(jsonInputStream);
-            DatabaseContent databaseContent;
-
-            objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-
-            // Convert to DatabaseContent
-            databaseContent = objectMapper.treeToValue(rootNode, DatabaseContent.class);
-
-            // Set relationships between products, device types, and device personalities
-            for (ProductDescriptor product : databaseContent.productDescriptors) {
-                for (DeviceTypeDescriptor deviceType : databaseContent.deviceTypeDescriptors) {
-                    if (deviceType.getType().equals(product.getType())) {
-                        product.setDeviceType(deviceType);
-                    }
-                }
+        return read(jsonInputStream).getProductDescriptors();
+    }
 
-                for (DevicePersonalityDescriptor devicePersonality : databaseContent.devicePersonalityDescriptors) {
-                    if (devicePersonality.getPersonality().equals(product.getPersonality())) {
-                        product.setDevicePersonality(devicePersonality);
-                    }
-                }
-            }
+    public static Sections read(InputStream jsonInputStream) {
+        List<ProductDescriptor> products = new ArrayList<>();
+        Map<String, DeviceTypeDescriptor> deviceTypes = new LinkedHashMap<>();
+        Map<String, DevicePersonalityDescriptor> devicePersonalities = new LinkedHashMap<>();
+        Map<String, FirmwareDescriptor> firmwares = new HashMap<>();
+        Map<Integer, ApplicationDescriptor> applications = new HashMap<>();
 
-            // Set firmware versions for device types
-            for (DeviceTypeDescriptor deviceTypeDescriptor : databaseContent.deviceTypeDescriptors) {
-                for (FirmwareDescriptor firmwareDescriptor : databaseContent.firmwareDescriptors) {
-                    if (firmwareDescriptor.getVersion().equals(deviceTypeDescriptor.getFirmwareVersion())) {
-                        deviceTypeDescriptor.setFirmwareDescriptor(firmwareDescriptor);
-                    }
-                }
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(jsonInputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Product database is not a JSON object");
             }
 
-            // Set firmware versions and applications for device personalities
-            for (DevicePersonalityDescriptor devicePersonalityDescriptor : databaseContent.devicePersonalityDescriptors) {
-                for (FirmwareDescriptor firmwareDescriptor : databaseContent.firmwareDescriptors) {
-                    if (firmwareDescriptor.getVersion().equals(devicePersonalityDescriptor.getFirmwareVersion())) {
-                        devicePersonalityDescriptor.setFirmwareDescriptor(firmwareDescriptor);
-                    }
-                }
+            // Index each section while it streams in, the last descriptor with a key wins
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String section = parser.currentName();
+
+                parser.nextToken();
 
-                for (ApplicationDescriptor application : databaseContent.applicationDescriptors) {
-                    if (application.getId() == devicePersonalityDescriptor.getApplicationId()) {
-                        devicePersonalityDescriptor.setApplication(application);
-                    }
+                switch (section) {
+                    case "product_descriptors":
+                        readSection(parser, PRODUCT_DESCRIPTOR_READER, (ProductDescriptor d) -> products.add(d));
+                        break;
+                    case "device_type_descriptors":
+                        readSection(parser, DEVICE_TYPE_DESCRIPTOR_READER,
+                                    (DeviceTypeDescriptor d) -> index(deviceTypes, d.getType(), d));
+                        break;
+                    case "device_personality_descriptors":
+                        readSection(parser, DEVICE_PERSONALITY_DESCRIPTOR_READER,
+                                    (DevicePersonalityDescriptor d) -> index(devicePersonalities, d.getPersonality(), d));
+                        break;
+                    case "firmware_descriptors":
+                        readSection(parser, FIRMWARE_DESCRIPTOR_READER,
+                                    (FirmwareDescriptor d) -> index(firmwares, d.getVersion(), d));
+                        break;
+                    case "application_descriptors":
+                        readSection(parser, APPLICATION_DESCRIPTOR_READER,
+                                    (ApplicationDescriptor d) -> index(applications, d.getId(), d));
+                        break;
+                    default:
+                        parser.skipChildren();
                 }
             }
-
-            return databaseContent.productDescriptors;
         } catch (Exception e) {
             throw new RuntimeException("Failed to read from InputStream", e);
         }
+
+        // Set relationships between products, device types, and device personalities
+        for (ProductDescriptor product : products) {
+            DeviceTypeDescriptor deviceType = deviceTypes.get(product.getType());
+            DevicePersonalityDescriptor devicePersonality =
+                devicePersonalities.get(product.getPersonality());
+
+            if (deviceType != null) {
+                product.setDeviceType(deviceType);
+            }
+
+            if (devicePersonality != null) {
+                product.setDevicePersonality(devicePersonality);
+            }
+        }
+
+        // Set firmware versions for device types
+        for (DeviceTypeDescriptor deviceTypeDescriptor : deviceTypes.values()) {
+            FirmwareDescriptor firmwareDescriptor =
+                firmwares.get(deviceTypeDescriptor.getFirmwareVersion());
+
+            if (firmwareDescriptor != null) {
+                deviceTypeDescriptor.setFirmwareDescriptor(firmwareDescriptor);
+            }
+        }
+
+        // Set firmware versions and applications for device personalities
+        for (DevicePersonalityDescriptor devicePersonalityDescriptor : devicePersonalities.values()) {
+            FirmwareDescriptor firmwareDescriptor =
+                firmwares.get(devicePersonalityDescriptor.getFirmwareVersion());
+            ApplicationDescriptor application =
+                applications.get(devicePersonalityDescriptor.getApplicationId());
+
+            if (firmwareDescriptor != null) {
+                devicePersonalityDescriptor.setFirmwareDescriptor(firmwareDescriptor);
+            }
+
+            if (application != null) {
+                devicePersonalityDescriptor.setApplication(application);
+            }
+        }
+
+        return new Sections(products,
+                            new ArrayList<>(deviceTypes.values()),
+                            new ArrayList<>(devicePersonalities.values()));
+    }
+
+    // Binds the elements of the array at the parser one at a time
+    private static <T> void readSection(JsonParser parser, ObjectReader reader, Consumer<T> consumer)
+        throws IOException
+    {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Section " + parser.currentName() + " is not a JSON array");
+        }
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            consumer.accept(reader.readValue(parser));
+        }
+
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new IOException("Unexpected " + parser.currentToken() + " in section " +
+                                  parser.currentName());
+        }
+    }
+
+    private static <K, V> void index(Map<K, V> index, K key, V descriptor) {
+        if (key != null) {
+            index.put(key, descriptor);
+        }
     }
 }
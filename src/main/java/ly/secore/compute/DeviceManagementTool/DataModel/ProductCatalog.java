@@ -0,0 +1,177 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The product descriptors of the catalog with wildcard indexes over their product keys and over
+ * the types and personalities of the catalog, to find the descriptors of the product key a
+ * device reports.
+ */
+public class ProductCatalog {
+    private final ProductDescriptor[] productDescriptors;
+    private final DeviceTypeDescriptor[] deviceTypeDescriptors;
+    private final DevicePersonalityDescriptor[] devicePersonalityDescriptors;
+    private final WildcardIndex<Integer> productIndexes;
+    private final WildcardIndex<DeviceTypeDescriptor> deviceTypeIndex;
+    private final WildcardIndex<DevicePersonalityDescriptor> devicePersonalityIndex;
+
+    /** A catalog of the products and of the types and personalities they refer to. */
+    public ProductCatalog(ProductDescriptor[] productDescriptors) {
+        this(productDescriptors,
+             referenced(productDescriptors, ProductDescriptor::getDeviceTypeDescriptor,
+                        new DeviceTypeDescriptor[0]),
+             referenced(productDescriptors, ProductDescriptor::getDevicePersonalityDescriptor,
+                        new DevicePersonalityDescriptor[0]));
+    }
+
+    public ProductCatalog(ProductDescriptor[] productDescriptors,
+                          DeviceTypeDescriptor[] deviceTypeDescriptors,
+                          DevicePersonalityDescriptor[] devicePersonalityDescriptors) {
+        Map<String, Integer> productKeys = new LinkedHashMap<>();
+        Map<String, DeviceTypeDescriptor> types = new LinkedHashMap<>();
+        Map<String, DevicePersonalityDescriptor> personalities = new LinkedHashMap<>();
+
+        for (int i = 0; i < productDescriptors.length; i++) {
+            putPattern(productKeys, productDescriptors[i].getProductKey(), i);
+        }
+
+        for (DeviceTypeDescriptor deviceType : deviceTypeDescriptors) {
+            putPattern(types, deviceType.getType(), deviceType);
+        }
+
+        for (DevicePersonalityDescriptor devicePersonality : devicePersonalityDescriptors) {
+            putPattern(personalities, devicePersonality.getPersonality(), devicePersonality);
+        }
+
+        this.productDescriptors = productDescriptors;
+        this.deviceTypeDescriptors = deviceTypeDescriptors;
+        this.devicePersonalityDescriptors = devicePersonalityDescriptors;
+        this.productIndexes = new WildcardIndex<>(productKeys);
+        this.deviceTypeIndex = new WildcardIndex<>(types);
+        this.devicePersonalityIndex = new WildcardIndex<>(personalities);
+    }
+
+    /**
+     * Reads and validates a catalog: every product needs a product key, and its type and
+     * personality must be described in the catalog.
+     */
+    public static ProductCatalog read(InputStream jsonInputStream) throws IOException {
+        JsonReader.Sections sections;
+        ProductDescriptor[] productDescriptors;
+
+        try {
+            sections = JsonReader.read(jsonInputStream);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed product catalog", e);
+        }
+
+        productDescriptors = sections.getProductDescriptors().toArray(new ProductDescriptor[0]);
+        validate(productDescriptors);
+
+        return new ProductCatalog(
+            productDescriptors,
+            sections.getDeviceTypeDescriptors().toArray(new DeviceTypeDescriptor[0]),
+            sections.getDevicePersonalityDescriptors().toArray(new DevicePersonalityDescriptor[0]));
+    }
+
+    // The checks of read, also for catalogs that come from elsewhere, e.g. a snapshot
+    static void validate(ProductDescriptor[] productDescriptors) throws IOException {
+        for (ProductDescriptor productDescriptor : productDescriptors) {
+            if (productDescriptor.getProductKey() == null) {
+                throw new IOException("Product without product key in catalog");
+            }
+
+            if (productDescriptor.getDeviceTypeDescriptor() == null) {
+                throw new IOException("Type " + productDescriptor.getType() + " of product " +
+                                      productDescriptor.getProductKey() + " not in catalog");
+            }
+
+            if (productDescriptor.getDevicePersonalityDescriptor() == null) {
+                throw new IOException("Personality " + productDescriptor.getPersonality() +
+                                      " of product " + productDescriptor.getProductKey() +
+                                      " not in catalog");
+            }
+        }
+    }
+
+    public ProductDescriptor[] getProductDescriptors() {
+        return productDescriptors;
+    }
+
+    public DeviceTypeDescriptor[] getDeviceTypeDescriptors() {
+        return deviceTypeDescriptors;
+    }
+
+    public DevicePersonalityDescriptor[] getDevicePersonalityDescriptors() {
+        return devicePersonalityDescriptors;
+    }
+
+    /** Returns the position of the product matching the product key, or -1 if none matches. */
+    public int findProductIndex(String productKey) {
+        Integer index = productIndexes.get(productKey);
+
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the product matching the product key.  A product key no product of the catalog
+     * matches gets a descriptor of its own if the catalog has a type and a personality matching
+     * it, else null is returned.
+     */
+    public ProductDescriptor findProductDescriptor(String productKey) {
+        int index = findProductIndex(productKey);
+        DeviceTypeDescriptor deviceType;
+        DevicePersonalityDescriptor devicePersonality;
+        ProductDescriptor productDescriptor;
+
+        if (index >= 0) {
+            return productDescriptors[index];
+        }
+
+        deviceType = deviceTypeIndex.get(productKey);
+        devicePersonality = devicePersonalityIndex.get(productKey);
+
+        if (deviceType == null || devicePersonality == null) {
+            return null;
+        }
+
+        productDescriptor = new ProductDescriptor();
+        productDescriptor.setProductKey(productKey);
+        productDescriptor.setType(deviceType.getType());
+        productDescriptor.setPersonality(devicePersonality.getPersonality());
+        productDescriptor.setDeviceType(deviceType);
+        productDescriptor.setDevicePersonality(devicePersonality);
+
+        return productDescriptor;
+    }
+
+    // The distinct descriptors the products refer to, in the order of the products
+    private static <T> T[] referenced(ProductDescriptor[] productDescriptors,
+                                      Function<ProductDescriptor, T> reference,
+                                      T[] type) {
+        Set<T> descriptors = new LinkedHashSet<>();
+
+        for (ProductDescriptor productDescriptor : productDescriptors) {
+            T descriptor = reference.apply(productDescriptor);
+
+            if (descriptor != null) {
+                descriptors.add(descriptor);
+            }
+        }
+
+        return descriptors.toArray(type);
+    }
+
+    // The first descriptor of a pattern stays, as the catalog lists it first
+    private static <V> void putPattern(Map<String, V> patterns, String pattern, V value) {
+        if (pattern != null) {
+            patterns.putIfAbsent(pattern, value);
+        }
+    }
+}
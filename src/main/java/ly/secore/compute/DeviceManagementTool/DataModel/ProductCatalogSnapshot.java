@@ -0,0 +1,413 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Binary snapshot of a compiled product catalog, so that later launches skip parsing and binding
+ * the JSON.  The snapshot records the SHA-256 of the JSON it was compiled from and is only used
+ * for exactly that JSON; for any other content the JSON is parsed and the snapshot replaced.  A
+ * snapshot whose payload does not match its own SHA-256, or whose catalog fails the checks of
+ * ProductCatalog.read, is not used either.  The payload hash detects a damaged file, not a
+ * forged one: the snapshot is no more trusted than the directory it is kept in.
+ *
+ * Format: magic, version, content hash, payload hash, then the payload: a table of the distinct
+ * strings, then the firmware, application, device type, device personality and product
+ * descriptors in that order.  Strings and descriptors are referred to by their index in their
+ * table, -1 stands for null.
+ */
+public class ProductCatalogSnapshot {
+    private static final Logger logger = LogManager.getLogger(ProductCatalogSnapshot.class);
+
+    private static final int MAGIC = 0x50435331; // "PCS1"
+    private static final int VERSION = 3;
+    private static final int CONTENT_HASH_LEN = 32;
+
+    /**
+     * Returns the catalog of the JSON, from the snapshot if it was compiled from the same JSON.
+     * Otherwise the JSON is read and the snapshot written for the next launch.
+     */
+    public static ProductCatalog load(byte[] json, Path snapshotPath) throws IOException {
+        byte[] contentHash = contentHash(json);
+        ProductCatalog productCatalog = null;
+
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(snapshotPath))) {
+            productCatalog = read(stream, contentHash);
+        } catch (NoSuchFileException e) {
+            // First launch
+        } catch (IOException e) {
+            logger.warn("Ignoring product catalog snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+
+        if (productCatalog != null) {
+            return productCatalog;
+        }
+
+        productCatalog = ProductCatalog.read(new ByteArrayInputStream(json));
+
+        try {
+            write(productCatalog, contentHash, snapshotPath);
+        } catch (IOException e) {
+            logger.warn("Failed to write product catalog snapshot " + snapshotPath + ": " +
+                        e.getMessage());
+        }
+
+        return productCatalog;
+    }
+
+    /**
+     * Returns the catalog of the snapshot, or null if it was compiled from other content.  Fails
+     * with an IOException if the snapshot is damaged.
+     */
+    public static ProductCatalog read(InputStream inputStream, byte[] contentHash)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte[] snapshotContentHash = new byte[CONTENT_HASH_LEN];
+        byte[] payloadHash = new byte[CONTENT_HASH_LEN];
+        byte[] payload;
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+
+        in.readFully(snapshotContentHash);
+
+        if (!Arrays.equals(snapshotContentHash, contentHash)) {
+            return null;
+        }
+
+        in.readFully(payloadHash);
+        payload = in.readAllBytes();
+
+        if (!MessageDigest.isEqual(payloadHash, contentHash(payload))) {
+            throw new IOException("Corrupt product catalog snapshot");
+        }
+
+        return readPayload(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    private static ProductCatalog readPayload(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        FirmwareDescriptor[] firmwares = new FirmwareDescriptor[in.readInt()];
+
+        for (int i = 0; i < firmwares.length; i++) {
+            FirmwareDescriptor firmware = new FirmwareDescriptor();
+
+            firmware.setDeviceClass(readString(in, strings));
+            firmware.setVersion(readString(in, strings));
+            firmware.setFileName(readString(in, strings));
+            firmware.setInitialFileName(readString(in, strings));
+            firmwares[i] = firmware;
+        }
+
+        ApplicationDescriptor[] applications = new ApplicationDescriptor[in.readInt()];
+
+        for (int i = 0; i < applications.length; i++) {
+            ApplicationDescriptor application = new ApplicationDescriptor();
+
+            application.setId(in.readInt());
+            application.setApplicationClass(readString(in, strings));
+            application.setVersion(readString(in, strings));
+            application.setDescription(readString(in, strings));
+            application.setFileName(readString(in, strings));
+            application.setAppKeyLabel(readString(in, strings));
+            applications[i] = application;
+        }
+
+        DeviceTypeDescriptor[] deviceTypes = new DeviceTypeDescriptor[in.readInt()];
+
+        for (int i = 0; i < deviceTypes.length; i++) {
+            DeviceTypeDescriptor deviceType = new DeviceTypeDescriptor();
+
+            deviceType.setType(readString(in, strings));
+            deviceType.setDeviceClass(readString(in, strings));
+            deviceType.setDeviceTypeId(in.readInt());
+            deviceType.setEcl(in.readInt());
+            deviceType.setFirmwareVersion(readString(in, strings));
+            deviceType.setDescription(readString(in, strings));
+            deviceType.setUpdateTime(readString(in, strings));
+            deviceType.setFirmwareDescriptor(readReference(in, firmwares));
+            deviceTypes[i] = deviceType;
+        }
+
+        DevicePersonalityDescriptor[] devicePersonalities =
+            new DevicePersonalityDescriptor[in.readInt()];
+
+        for (int i = 0; i < devicePersonalities.length; i++) {
+            DevicePersonalityDescriptor devicePersonality = new DevicePersonalityDescriptor();
+
+            devicePersonality.setId(in.readInt());
+            devicePersonality.setPersonality(readString(in, strings));
+            devicePersonality.setDescription(readString(in, strings));
+            devicePersonality.setOperatingMode(in.readInt());
+            devicePersonality.setVariant(in.readInt());
+            devicePersonality.setMasterKey(readString(in, strings));
+            devicePersonality.setFirmware(readString(in, strings));
+            devicePersonality.setApplicationId(in.readInt());
+            devicePersonality.setUpdateTime(readString(in, strings));
+            devicePersonality.setFirmwareDescriptor(readReference(in, firmwares));
+            devicePersonality.setApplication(readReference(in, applications));
+            devicePersonalities[i] = devicePersonality;
+        }
+
+        ProductDescriptor[] products = new ProductDescriptor[in.readInt()];
+
+        for (int i = 0; i < products.length; i++) {
+            ProductDescriptor product = new ProductDescriptor();
+
+            product.setProductKey(readString(in, strings));
+            product.setType(readString(in, strings));
+            product.setPersonality(readString(in, strings));
+            product.setDeviceType(readReference(in, deviceTypes));
+            product.setDevicePersonality(readReference(in, devicePersonalities));
+            products[i] = product;
+        }
+
+        ProductCatalog.validate(products);
+
+        return new ProductCatalog(products, deviceTypes, devicePersonalities);
+    }
+
+    /** Writes the snapshot to a temporary file first, a snapshot is never seen half written. */
+    public static void write(ProductCatalog productCatalog, byte[] contentHash, Path snapshotPath)
+        throws IOException
+    {
+        Path directory = snapshotPath.toAbsolutePath().getParent();
+        Path temporaryPath;
+
+        Files.createDirectories(directory);
+        temporaryPath = Files.createTempFile(directory, snapshotPath.getFileName().toString(), null);
+
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temporaryPath))) {
+                write(productCatalog, contentHash, stream);
+            }
+
+            Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    public static void write(ProductCatalog productCatalog, byte[] contentHash, OutputStream stream)
+        throws IOException
+    {
+        ProductDescriptor[] products = productCatalog.getProductDescriptors();
+        Table<DeviceTypeDescriptor> deviceTypes = new Table<>();
+        Table<DevicePersonalityDescriptor> devicePersonalities = new Table<>();
+        Table<FirmwareDescriptor> firmwares = new Table<>();
+        Table<ApplicationDescriptor> applications = new Table<>();
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> stringTable = new ArrayList<>();
+        DataOutputStream out = new DataOutputStream(stream);
+
+        // Collect the descriptors of the catalog and those the products refer to, directly or
+        // through others
+        for (DeviceTypeDescriptor deviceType : productCatalog.getDeviceTypeDescriptors()) {
+            deviceTypes.add(deviceType);
+        }
+
+        for (DevicePersonalityDescriptor devicePersonality :
+                 productCatalog.getDevicePersonalityDescriptors()) {
+            devicePersonalities.add(devicePersonality);
+        }
+
+        for (ProductDescriptor product : products) {
+            deviceTypes.add(product.getDeviceTypeDescriptor());
+            devicePersonalities.add(product.getDevicePersonalityDescriptor());
+        }
+
+        for (DeviceTypeDescriptor deviceType : deviceTypes.elements) {
+            firmwares.add(deviceType.getFirmwareDescriptor());
+        }
+
+        for (DevicePersonalityDescriptor devicePersonality : devicePersonalities.elements) {
+            firmwares.add(devicePersonality.getFirmwareDescriptor());
+            applications.add(devicePersonality.getApplication());
+        }
+
+        // Body first, its strings make up the string table that precedes it
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+
+        bodyOut.writeInt(firmwares.elements.size());
+
+        for (FirmwareDescriptor firmware : firmwares.elements) {
+            writeString(bodyOut, strings, stringTable, firmware.getDeviceClass());
+            writeString(bodyOut, strings, stringTable, firmware.getVersion());
+            writeString(bodyOut, strings, stringTable, firmware.getFileName());
+            writeString(bodyOut, strings, stringTable, firmware.getInitialFileName());
+        }
+
+        bodyOut.writeInt(applications.elements.size());
+
+        for (ApplicationDescriptor application : applications.elements) {
+            bodyOut.writeInt(application.getId());
+            writeString(bodyOut, strings, stringTable, application.getApplicationClass());
+            writeString(bodyOut, strings, stringTable, application.getVersion());
+            writeString(bodyOut, strings, stringTable, application.getDescription());
+            writeString(bodyOut, strings, stringTable, application.getFileName());
+            writeString(bodyOut, strings, stringTable, application.getAppKeyLabel());
+        }
+
+        bodyOut.writeInt(deviceTypes.elements.size());
+
+        for (DeviceTypeDescriptor deviceType : deviceTypes.elements) {
+            writeString(bodyOut, strings, stringTable, deviceType.getType());
+            writeString(bodyOut, strings, stringTable, deviceType.getDeviceClass());
+            bodyOut.writeInt(deviceType.getDeviceTypeId());
+            bodyOut.writeInt(deviceType.getEcl());
+            writeString(bodyOut, strings, stringTable, deviceType.getFirmwareVersion());
+            writeString(bodyOut, strings, stringTable, deviceType.getDescription());
+            writeString(bodyOut, strings, stringTable, deviceType.getUpdateTime());
+            bodyOut.writeInt(firmwares.indexOf(deviceType.getFirmwareDescriptor()));
+        }
+
+        bodyOut.writeInt(devicePersonalities.elements.size());
+
+        for (DevicePersonalityDescriptor devicePersonality : devicePersonalities.elements) {
+            bodyOut.writeInt(devicePersonality.getId());
+            writeString(bodyOut, strings, stringTable, devicePersonality.getPersonality());
+            writeString(bodyOut, strings, stringTable, devicePersonality.getDescription());
+            bodyOut.writeInt(devicePersonality.getOperatingMode());
+            bodyOut.writeInt(devicePersonality.getVariant());
+            writeString(bodyOut, strings, stringTable, devicePersonality.getMasterKey());
+            writeString(bodyOut, strings, stringTable, devicePersonality.getFirmwareVersion());
+            bodyOut.writeInt(devicePersonality.getApplicationId());
+            writeString(bodyOut, strings, stringTable, devicePersonality.getUpdateTime());
+            bodyOut.writeInt(firmwares.indexOf(devicePersonality.getFirmwareDescriptor()));
+            bodyOut.writeInt(applications.indexOf(devicePersonality.getApplication()));
+        }
+
+        bodyOut.writeInt(products.length);
+
+        for (ProductDescriptor product : products) {
+            writeString(bodyOut, strings, stringTable, product.getProductKey());
+            writeString(bodyOut, strings, stringTable, product.getType());
+            writeString(bodyOut, strings, stringTable, product.getPersonality());
+            bodyOut.writeInt(deviceTypes.indexOf(product.getDeviceTypeDescriptor()));
+            bodyOut.writeInt(devicePersonalities.indexOf(product.getDevicePersonalityDescriptor()));
+        }
+
+        bodyOut.flush();
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+
+        payloadOut.writeInt(stringTable.size());
+
+        for (String string : stringTable) {
+            payloadOut.writeUTF(string);
+        }
+
+        body.writeTo(payloadOut);
+        payloadOut.flush();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(contentHash);
+        out.write(contentHash(payload.toByteArray()));
+        payload.writeTo(out);
+        out.flush();
+    }
+
+    public static byte[] contentHash(byte[] json) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(json);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /** Compiles a catalog ahead of time: ProductCatalogSnapshot <catalog.json> <snapshot> */
+    public static void main(String[] args) throws IOException {
+        byte[] json = Files.readAllBytes(Path.of(args[0]));
+
+        write(ProductCatalog.read(new ByteArrayInputStream(json)), contentHash(json),
+              Path.of(args[1]));
+    }
+
+    // Descriptors in the order they were first added, each once
+    private static class Table<T> {
+        final List<T> elements = new ArrayList<>();
+        final Map<T, Integer> indexes = new IdentityHashMap<>();
+
+        void add(T element) {
+            if (element != null && !indexes.containsKey(element)) {
+                indexes.put(element, elements.size());
+                elements.add(element);
+            }
+        }
+
+        int indexOf(T element) {
+            Integer index = element != null ? indexes.get(element) : null;
+
+            return index != null ? index : -1;
+        }
+    }
+
+    private static void writeString(DataOutputStream out,
+                                    Map<String, Integer> strings,
+                                    List<String> stringTable,
+                                    String string) throws IOException {
+        Integer index = -1;
+
+        if (string != null) {
+            index = strings.get(string);
+
+            if (index == null) {
+                index = stringTable.size();
+                strings.put(string, index);
+                stringTable.add(string);
+            }
+        }
+
+        out.writeInt(index);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        return readReference(in, strings);
+    }
+
+    private static <T> T readReference(DataInputStream in, T[] table) throws IOException {
+        int index = in.readInt();
+
+        if (index == -1) {
+            return null;
+        }
+
+        if (index < 0 || index >= table.length) {
+            throw new IOException("Corrupt product catalog snapshot");
+        }
+
+        return table[index];
+    }
+}
@@ -0,0 +1,178 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of values by key patterns in which 'x' stands for any single character, as in the
+ * catalog keys "885-RDxxxxx00xx/xx" and "885-RD10000xx00/12".
+ *
+ * The patterns are compiled into a trie, and the trie into a deterministic automaton as keys are
+ * looked up, so a lookup takes one transition per character of the key, however many patterns
+ * there are.  The states are built on demand and memoized up to MAX_STATES, since the full
+ * automaton of many overlapping patterns can grow exponentially; past that, lookups build the
+ * states they need afresh.  Of several patterns that match a key, the one with the fewest
+ * wildcards wins, and of those the one that comes first in the map.  Lookups are thread-safe.
+ */
+public class WildcardIndex<V> {
+    public static final char WILDCARD = 'x';
+    public static final int MAX_STATES = 4096;
+
+    private static class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<>();
+        TrieNode wildcardChild;
+        Object value;
+        int wildcards;
+        int order = -1;
+    }
+
+    // A state stands for the set of trie nodes a key prefix can reach
+    private static class State {
+        final Set<TrieNode> nodes;
+        final Set<TrieNode> wildcardTargets = new HashSet<>();
+        final Object value;
+        final boolean memoized;
+        final Map<Character, State> transitions = new ConcurrentHashMap<>();
+        volatile State otherTransition;
+
+        State(Set<TrieNode> nodes, boolean memoized) {
+            TrieNode best = null;
+
+            for (TrieNode node : nodes) {
+                if (node.wildcardChild != null) {
+                    wildcardTargets.add(node.wildcardChild);
+                }
+
+                if (node.order >= 0 &&
+                    (best == null ||
+                     node.wildcards < best.wildcards ||
+                     (node.wildcards == best.wildcards && node.order < best.order))) {
+                    best = node;
+                }
+            }
+
+            this.nodes = nodes;
+            this.value = best != null ? best.value : null;
+            this.memoized = memoized;
+        }
+    }
+
+    private final Map<Set<TrieNode>, State> states = new ConcurrentHashMap<>();
+    private final State start;
+
+    public WildcardIndex(Map<String, V> patterns) {
+        TrieNode root = new TrieNode();
+        int order = 0;
+
+        for (Map.Entry<String, V> pattern : patterns.entrySet()) {
+            TrieNode node = root;
+            int wildcards = 0;
+
+            for (char c : pattern.getKey().toCharArray()) {
+                if (c == WILDCARD) {
+                    if (node.wildcardChild == null) {
+                        node.wildcardChild = new TrieNode();
+                    }
+
+                    node = node.wildcardChild;
+                    wildcards++;
+                } else {
+                    node = node.children.computeIfAbsent(c, k -> new TrieNode());
+                }
+            }
+
+            node.value = pattern.getValue();
+            node.wildcards = wildcards;
+            node.order = order++;
+        }
+
+        start = getState(Set.of(root));
+    }
+
+    /** Returns the value of the best pattern matching the key, or null if none matches. */
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        State state = start;
+
+        if (key == null) {
+            return null;
+        }
+
+        for (int i = 0; i < key.length() && state != null; i++) {
+            state = next(state, key.charAt(i));
+        }
+
+        return state != null ? (V)state.value : null;
+    }
+
+    // The number of states memoized so far
+    int getStateCount() {
+        return states.size();
+    }
+
+    // Subset construction of one transition, null stands for the state without nodes
+    private State next(State state, char c) {
+        State next = state.transitions.get(c);
+        Set<TrieNode> targets = null;
+
+        if (next != null) {
+            return next;
+        }
+
+        for (TrieNode node : state.nodes) {
+            TrieNode child = node.children.get(c);
+
+            if (child != null) {
+                if (targets == null) {
+                    targets = new HashSet<>(state.wildcardTargets);
+                }
+
+                targets.add(child);
+            }
+        }
+
+        // Characters no pattern spells out at this point all lead to the wildcard targets
+        if (targets == null) {
+            next = state.otherTransition;
+
+            if (next == null && !state.wildcardTargets.isEmpty()) {
+                next = getState(state.wildcardTargets);
+
+                if (state.memoized && next.memoized) {
+                    state.otherTransition = next;
+                }
+            }
+
+            return next;
+        }
+
+        next = getState(targets);
+
+        if (state.memoized && next.memoized) {
+            state.transitions.put(c, next);
+        }
+
+        return next;
+    }
+
+    private State getState(Set<TrieNode> nodes) {
+        State state = states.get(nodes);
+        State existing;
+
+        if (state != null) {
+            return state;
+        }
+
+        if (states.size() >= MAX_STATES) {
+            return new State(nodes, false);
+        }
+
+        state = new State(nodes, true);
+        existing = states.putIfAbsent(nodes, state);
+
+        return existing != null ? existing : state;
+    }
+}
@@ -0,0 +1,34 @@
+package ly.secore.compute.DeviceManagementTool.Event;
+
+import java.nio.file.Path;
+import java.util.EventObject;
+
+/*
+ * Published once a device is back after a factory flash, or once waiting for it gave up.
+ * The latency is measured from the start of the factory flash.
+ */
+public class DeviceReady extends EventObject {
+    private static final long serialVersionUID = 1L;
+    private final Path uartPath;
+    private final boolean serviceSessionOpen;
+    private final long latencyMillis;
+
+    public DeviceReady(Object source, Path uartPath, boolean serviceSessionOpen, long latencyMillis) {
+        super(source);
+        this.uartPath = uartPath;
+        this.serviceSessionOpen = serviceSessionOpen;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public Path getUartPath() {
+        return uartPath;
+    }
+
+    public boolean isServiceSessionOpen() {
+        return serviceSessionOpen;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+}
@@ -4,6 +4,7 @@ import java.nio.file.Path;
 import java.util.EventObject;
 import javax.swing.event.EventListenerList;
 import ly.secore.compute.DeviceManagementTool.DataModel.DeviceInformation;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalog;
 import ly.secore.compute.DeviceManagementTool.DataModel.ProductDescriptor;
 
 public class EventBus {
@@ -29,12 +30,29 @@ public class EventBus {
         fireEvent(new FactoryFlashRequested(source, initialFileName));
     }
 
+    public void deviceReady(Object source, Path uartPath, boolean serviceSessionOpen,
+                            long latencyMillis) {
+        fireEvent(new DeviceReady(source, uartPath, serviceSessionOpen, latencyMillis));
+    }
+
     public void updateUartPaths(Object source, Path[] uartPaths) {
         fireEvent(new UpdateUartPathsRequested(source, uartPaths));
     }
 
+    public void uartPathAdded(Object source, Path uartPath) {
+        fireEvent(new UartPathAdded(source, uartPath));
+    }
+
+    public void uartPathRemoved(Object source, Path uartPath) {
+        fireEvent(new UartPathRemoved(source, uartPath));
+    }
+
     public void updateProductDescriptors(Object source, ProductDescriptor[] productDescriptors) {
-        fireEvent(new UpdateProductDescriptors(source, productDescriptors));
+        fireEvent(new UpdateProductDescriptors(source, new ProductCatalog(productDescriptors)));
+    }
+
+    public void updateProductDescriptors(Object source, ProductCatalog productCatalog) {
+        fireEvent(new UpdateProductDescriptors(source, productCatalog));
     }
 
     public void updateDeviceInformation(Object source, DeviceInformation deviceInformation) {
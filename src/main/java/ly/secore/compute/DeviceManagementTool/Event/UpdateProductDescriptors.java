@@ -1,18 +1,23 @@
 package ly.secore.compute.DeviceManagementTool.Event;
 
 import java.util.EventObject;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalog;
 import ly.secore.compute.DeviceManagementTool.DataModel.ProductDescriptor;
 
 public class UpdateProductDescriptors extends EventObject {
     private static final long serialVersionUID = 1L;
-    private final ProductDescriptor[] productDescriptors;
+    private final ProductCatalog productCatalog;
 
-    public UpdateProductDescriptors(Object source, ProductDescriptor[] productDescriptors) {
+    public UpdateProductDescriptors(Object source, ProductCatalog productCatalog) {
         super(source);
-        this.productDescriptors = productDescriptors;
+        this.productCatalog = productCatalog;
     }
 
     public ProductDescriptor[] getProductDescriptors() {
-        return productDescriptors;
+        return productCatalog.getProductDescriptors();
+    }
+
+    public ProductCatalog getProductCatalog() {
+        return productCatalog;
     }
 }
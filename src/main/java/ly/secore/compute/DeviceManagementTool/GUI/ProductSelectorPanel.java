@@ -10,6 +10,7 @@ import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import ly.secore.compute.Device;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalog;
 import ly.secore.compute.DeviceManagementTool.DataModel.ProductDescriptor;
 import ly.secore.compute.DeviceManagementTool.Event.EventBus;
 import ly.secore.compute.DeviceManagementTool.Event.Listener;
@@ -22,6 +23,8 @@ public class ProductSelectorPanel extends JPanel implements ActionListener, List
     private final EventBus eventBus;
     private JComboBox<String> productDescriptorsComboBox;
     private ProductDescriptor[] productDescriptors;
+    private ProductCatalog productCatalog;
+    private String deviceProductKey;
     private ProductDescriptorPanel productDescriptorPanel;
 
     public ProductSelectorPanel(EventBus eventBus) {
@@ -49,7 +52,8 @@ public class ProductSelectorPanel extends JPanel implements ActionListener, List
         if (event instanceof UpdateProductDescriptors) {
             UpdateProductDescriptors updateEvent = (UpdateProductDescriptors)event;
 
-            productDescriptors = updateEvent.getProductDescriptors();
+            productCatalog = updateEvent.getProductCatalog();
+            productDescriptors = productCatalog.getProductDescriptors();
 
             productDescriptorsComboBox.removeAllItems();
             for (ProductDescriptor descriptor : productDescriptors) {
@@ -57,21 +61,38 @@ public class ProductSelectorPanel extends JPanel implements ActionListener, List
                     descriptor.getDeviceTypeDescriptor().getDescription());
             }
             productDescriptorsComboBox.addItem(new String("None"));
-            productDescriptorsComboBox.setSelectedIndex(productDescriptors.length);
+            selectProduct(deviceProductKey);
 
             SwingUtilities.windowForComponent(this).pack();
         } else if (event instanceof UpdateDeviceInformationRequested) {
             Device.DDM885Info ddm885Info = ((UpdateDeviceInformationRequested)event)
                 .getDeviceInformation().getDDM885Info();
 
-            if (ddm885Info == null || ddm885Info.productKey == null) {
-                productDescriptorsComboBox.setSelectedIndex(productDescriptors.length);
+            deviceProductKey = ddm885Info != null ? ddm885Info.productKey : null;
+            selectProduct(deviceProductKey);
+        }
+    }
+
+    // Selects the product of the connected device, also after the catalog was reloaded
+    private void selectProduct(String productKey) {
+        if (productCatalog == null) {
+            return;
+        }
+
+        if (productKey == null) {
+            productDescriptorsComboBox.setSelectedIndex(productDescriptors.length);
+        } else {
+            int index = productCatalog.findProductIndex(productKey);
+
+            if (index >= 0) {
+                productDescriptorsComboBox.setSelectedIndex(index);
             } else {
-                for (int i = 0; i < productDescriptors.length; i++) {
-                    if (productDescriptors[i].getProductKey().equals(ddm885Info.productKey)) {
-                        productDescriptorsComboBox.setSelectedIndex(i);
-                        break;
-                    }
+                // Not a product of the catalog, but its type and personality may be
+                ProductDescriptor productDescriptor = productCatalog.findProductDescriptor(productKey);
+
+                if (productDescriptor != null) {
+                    productDescriptorsComboBox.setSelectedIndex(productDescriptors.length);
+                    eventBus.selectProductDescriptor(productDescriptor);
                 }
             }
         }
@@ -15,6 +15,8 @@ import ly.secore.compute.DeviceManagementTool.DataModel.DeviceInformation;
 import ly.secore.compute.DeviceManagementTool.Event.EventBus;
 import ly.secore.compute.DeviceManagementTool.Event.Listener;
 import ly.secore.compute.DeviceManagementTool.Event.SelectProductDescriptorRequested;
+import ly.secore.compute.DeviceManagementTool.Event.UartPathAdded;
+import ly.secore.compute.DeviceManagementTool.Event.UartPathRemoved;
 import ly.secore.compute.DeviceManagementTool.Event.UpdateDeviceInformationRequested;
 import ly.secore.compute.DeviceManagementTool.Event.UpdateUartPathsRequested;
 import ly.secore.compute.Device;
@@ -145,6 +147,22 @@ public class Sidebar extends JPanel implements ActionListener, Listener {
                 uartComboBox.addItem(path);
             }
             SwingUtilities.windowForComponent(this).pack();
+        } else if (requestEvent instanceof UartPathAdded) {
+            Path uartPath = ((UartPathAdded)requestEvent).getUartPath();
+            int index = 0;
+
+            while (index < uartComboBox.getItemCount() &&
+                   uartComboBox.getItemAt(index).compareTo(uartPath) < 0) {
+                index++;
+            }
+
+            if (index == uartComboBox.getItemCount() ||
+                !uartComboBox.getItemAt(index).equals(uartPath)) {
+                uartComboBox.insertItemAt(uartPath, index);
+                SwingUtilities.windowForComponent(this).pack();
+            }
+        } else if (requestEvent instanceof UartPathRemoved) {
+            uartComboBox.removeItem(((UartPathRemoved)requestEvent).getUartPath());
         } else if (requestEvent instanceof SelectProductDescriptorRequested) {
             if (((SelectProductDescriptorRequested)requestEvent).getProductDescriptor() != null &&
                 deviceInformation.getLifecycleInfo() != null &&
@@ -0,0 +1,150 @@
+package ly.secore.compute.DeviceManagementTool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalog;
+import ly.secore.compute.DeviceManagementTool.DataModel.ProductCatalogSnapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the product catalog of a file up to date.  Whenever the file changes, it is read and
+ * validated again on the thread of the watcher, and only a valid catalog replaces the current
+ * one, in a single reference swap.  Readers of the catalog never wait for a reload.
+ */
+public class ProductCatalogWatcher implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ProductCatalogWatcher.class);
+
+    // Editors and exports write a file in several steps, it is read once they have been quiet
+    private static final long SETTLE_MILLIS = 200;
+
+    public interface Listener {
+        void productCatalogUpdated(ProductCatalog productCatalog);
+    }
+
+    private final Path catalogPath;
+    private final Path snapshotPath;
+    private final Listener listener;
+    private final WatchService watchService;
+    private volatile ProductCatalog productCatalog;
+
+    /**
+     * Reads the catalog and watches it, fails if the file does not hold a valid catalog.  Each
+     * version of the catalog is compiled into the snapshot at snapshotPath, unless it is null.
+     */
+    public ProductCatalogWatcher(Path catalogPath, Path snapshotPath, Listener listener)
+        throws IOException
+    {
+        this.catalogPath = catalogPath.toAbsolutePath();
+        this.snapshotPath = snapshotPath;
+        this.listener = listener;
+
+        watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            // Register before the first read, so no change slips through in between
+            this.catalogPath.getParent().register(watchService,
+                                                  StandardWatchEventKinds.ENTRY_CREATE,
+                                                  StandardWatchEventKinds.ENTRY_MODIFY);
+            productCatalog = read();
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(this::watch, "product-catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public ProductCatalog getProductCatalog() {
+        return productCatalog;
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.error("Failed to close watch service: " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+
+                // Collect the events of the change until the file has been quiet for a while
+                while (key != null) {
+                    changed |= concernsCatalog(key);
+
+                    if (!key.reset()) {
+                        logger.error("Watching " + catalogPath + " stopped, its directory is " +
+                                     "no longer accessible.");
+                        return;
+                    }
+
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean concernsCatalog(WatchKey key) {
+        boolean concernsCatalog = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                catalogPath.getFileName().equals(event.context())) {
+                concernsCatalog = true;
+            }
+        }
+
+        return concernsCatalog;
+    }
+
+    private void reload() {
+        ProductCatalog updatedProductCatalog;
+
+        try {
+            updatedProductCatalog = read();
+        } catch (IOException e) {
+            logger.error("Keeping the current product catalog, " + catalogPath + " is not valid: " +
+                         e.getMessage());
+            return;
+        }
+
+        productCatalog = updatedProductCatalog;
+        logger.info("Product catalog reloaded from " + catalogPath + ", " +
+                    updatedProductCatalog.getProductDescriptors().length + " products");
+        listener.productCatalogUpdated(updatedProductCatalog);
+    }
+
+    private ProductCatalog read() throws IOException {
+        if (snapshotPath != null) {
+            return ProductCatalogSnapshot.load(Files.readAllBytes(catalogPath), snapshotPath);
+        }
+
+        try (InputStream stream = Files.newInputStream(catalogPath)) {
+            return ProductCatalog.read(stream);
+        }
+    }
+}
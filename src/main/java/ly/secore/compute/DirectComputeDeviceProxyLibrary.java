@@ -0,0 +1,209 @@
+/*
+ * ly.secore.compute.DirectComputeDeviceProxyLibrary
+ * JNA direct mapping of the compute-device-proxy library
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/*
+ * Binds the calls issued per chunk, per query and per key agreement step through JNA direct
+ * mapping, which skips the reflective dispatch of the interface proxy.  Calls that take callbacks
+ * or are issued once per session go through the interface proxy.
+ */
+class DirectComputeDeviceProxyLibrary implements ComputeDeviceProxyLibrary {
+  private static final class Direct {
+    static {
+      Native.register(Direct.class, LIBRARY_NAME);
+    }
+
+    static native int compute_device_upload_chunk(
+            Pointer compute_device,
+            byte[]  chunk,
+            int     len);
+
+    static native int compute_device_get_manufacturing_info(
+            Pointer                  compute_device,
+            Device.ManufacturingInfo mfg_info);
+
+    static native int compute_device_get_reincarnation_info(
+            Pointer                  compute_device,
+            Device.ReincarnationInfo inc_info);
+
+    static native int compute_device_get_885_info(
+            Pointer        compute_device,
+            Memory         product_key,
+            IntByReference order_id);
+
+    static native int compute_device_get_lifecycle_info(
+            Pointer              compute_device,
+            Device.LifecycleInfo lifecycle_info);
+
+    static native int compute_device_set_inc_key_step_1(
+            Pointer compute_device,
+            byte[] initiator_random,
+            byte[] initiator_auth_pub_key,
+            Memory responder_random,
+            Memory responder_eph_pub_key);
+
+    static native int compute_device_set_inc_key_step_2(
+            Pointer compute_device,
+            byte[] initiator_eph_pub_key,
+            byte[] initiator_signature,
+            Memory responder_cmac);
+
+    static native int compute_device_set_inc_key_step_3(
+            Pointer compute_device,
+            byte[] initiator_cmac,
+            byte[] initiator_keyblock);
+  }
+
+  private final ComputeDeviceProxyLibrary proxy =
+      (ComputeDeviceProxyLibrary)Native.load(LIBRARY_NAME, ComputeDeviceProxyLibrary.class);
+
+  public Pointer compute_device_proxy_tcp_new(String                   host,
+                                              String                   service,
+                                              compute_device_vlog_cb_t vlog,
+                                              Pointer                  app_data) {
+    return proxy.compute_device_proxy_tcp_new(host, service, vlog, app_data);
+  }
+
+  public Pointer compute_device_proxy_tty_new(String                    dev_tty_fn,
+                                              compute_device_vlog_cb_t  vlog,
+                                              compute_device_reset_cb_t reset,
+                                              Pointer                   app_data) {
+    return proxy.compute_device_proxy_tty_new(dev_tty_fn, vlog, reset, app_data);
+  }
+
+  public void compute_device_delete(Pointer compute_device) {
+    proxy.compute_device_delete(compute_device);
+  }
+
+  public int compute_device_proxy_tty_reset_cb(Pointer compute_device) {
+    return proxy.compute_device_proxy_tty_reset_cb(compute_device);
+  }
+
+  public int compute_device_open_service_session(Pointer compute_device, int timeout) {
+    return proxy.compute_device_open_service_session(compute_device, timeout);
+  }
+
+  public int compute_device_close_service_session(Pointer compute_device) {
+    return proxy.compute_device_close_service_session(compute_device);
+  }
+
+  public int compute_device_request_deferred_reboot(Pointer compute_device) {
+    return proxy.compute_device_request_deferred_reboot(compute_device);
+  }
+
+  public int compute_device_factory_flash(Pointer                             compute_device,
+                                          compute_device_get_image_chunk_cb_t get_image_chunk) {
+    return proxy.compute_device_factory_flash(compute_device, get_image_chunk);
+  }
+
+  public int compute_device_get_mfg_reset_secret_derivation_input(
+          Pointer         compute_device,
+          IntByReference  mfg_reset_secret_derivation_input) {
+    return proxy.compute_device_get_mfg_reset_secret_derivation_input(
+               compute_device, mfg_reset_secret_derivation_input);
+  }
+
+  public int compute_device_lock(Pointer                         compute_device,
+                                 Device.ManufacturingResetSecret mfg_reset) {
+    return proxy.compute_device_lock(compute_device, mfg_reset);
+  }
+
+  public int compute_device_set_inc_key_step_1(
+          Pointer compute_device,
+          byte[] initiator_random,
+          byte[] initiator_auth_pub_key,
+          Memory responder_random,
+          Memory responder_eph_pub_key) {
+    return Direct.compute_device_set_inc_key_step_1(compute_device,
+                                                    initiator_random,
+                                                    initiator_auth_pub_key,
+                                                    responder_random,
+                                                    responder_eph_pub_key);
+  }
+
+  public int compute_device_set_inc_key_step_2(
+          Pointer compute_device,
+          byte[] initiator_eph_pub_key,
+          byte[] initiator_signature,
+          Memory responder_cmac) {
+    return Direct.compute_device_set_inc_key_step_2(compute_device,
+                                                    initiator_eph_pub_key,
+                                                    initiator_signature,
+                                                    responder_cmac);
+  }
+
+  public int compute_device_set_inc_key_step_3(
+          Pointer compute_device,
+          byte[] initiator_cmac,
+          byte[] initiator_keyblock) {
+    return Direct.compute_device_set_inc_key_step_3(compute_device,
+                                                    initiator_cmac,
+                                                    initiator_keyblock);
+  }
+
+  public int compute_device_get_manufacturing_info(
+          Pointer                  compute_device,
+          Device.ManufacturingInfo mfg_info) {
+    return Direct.compute_device_get_manufacturing_info(compute_device, mfg_info);
+  }
+
+  public int compute_device_get_reincarnation_info(
+          Pointer                  compute_device,
+          Device.ReincarnationInfo inc_info) {
+    return Direct.compute_device_get_reincarnation_info(compute_device, inc_info);
+  }
+
+  public int compute_device_start_upload(
+          Pointer compute_device,
+          int     image_type,
+          String  name) {
+    return proxy.compute_device_start_upload(compute_device, image_type, name);
+  }
+
+  public int compute_device_upload_chunk(
+          Pointer compute_device,
+          byte[]  chunk,
+          int     len) {
+    return Direct.compute_device_upload_chunk(compute_device, chunk, len);
+  }
+
+  public int compute_device_finalize_upload(
+          Pointer compute_device) {
+    return proxy.compute_device_finalize_upload(compute_device);
+  }
+
+  public int compute_device_set_app_key(
+          Pointer compute_device) {
+    return proxy.compute_device_set_app_key(compute_device);
+  }
+
+  public int compute_device_get_885_info(
+          Pointer        compute_device,
+          Memory         product_key,
+          IntByReference order_id) {
+    return Direct.compute_device_get_885_info(compute_device, product_key, order_id);
+  }
+
+  public int compute_device_get_lifecycle_info(
+          Pointer              compute_device,
+          Device.LifecycleInfo lifecycle_info) {
+    return Direct.compute_device_get_lifecycle_info(compute_device, lifecycle_info);
+  }
+}
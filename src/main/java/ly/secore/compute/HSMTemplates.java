@@ -0,0 +1,161 @@
+/*
+ * ly.secore.compute.HSMTemplates
+ * Precompiled PKCS#11 attribute templates and mechanisms of the Hardware Security Module
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+
+/*
+ * The attribute templates and mechanisms the provisioning operations of the HardwareSecurityModule
+ * pass to the token without any per-device attribute.  They are built once when the class is
+ * loaded and shared by all sessions, so nothing here may ever be modified; templates the token
+ * writes to, like those of C_GetAttributeValue, must not live here.
+ */
+final class HSMTemplates {
+  private HSMTemplates() {}
+
+  /* X9.143 key block headers */
+
+  static final char[] KBH_REINCARNATION_KEY     = "D0016K1AD00N0000".toCharArray();
+  static final char[] KBH_EPHEMERAL_KBPK        = "D0016K1AE00N0020".toCharArray();
+  static final char[] KBH_APPLICATION_SIGN_KEY  = "D0016S0RV00N0000".toCharArray();
+
+  /* Key labels */
+
+  static final String LABEL_MFG_RESET_MASTER       = "MFG_RESET_MASTER";
+  static final String LABEL_KLD_AUTH               = "KLD_AUTH";
+  static final char[] LABEL_APPLICATION_SIGN       = "APPLICATION_SIGN".toCharArray();
+  static final char[] LABEL_REINCARNATION_MASTER   = "000DEB06".toCharArray();
+  static final char[] LABEL_X9_143_MASTER_KBPK     = "X9_143_MASTER_KBPK".toCharArray();
+
+  /* Search templates of the keys stored on the token */
+
+  static final CK_ATTRIBUTE[] MFG_RESET_MASTER_KEY_SEARCH = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_LABEL, LABEL_MFG_RESET_MASTER)
+  };
+
+  static final CK_ATTRIBUTE[] KLD_AUTH_KEY_SEARCH = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_EC),
+    attribute(PKCS11Constants.CKA_LABEL, LABEL_KLD_AUTH)
+  };
+
+  static final CK_ATTRIBUTE[] APPLICATION_SIGN_KEY_SEARCH = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_RSA),
+    attribute(PKCS11Constants.CKA_LABEL, LABEL_APPLICATION_SIGN)
+  };
+
+  static final CK_ATTRIBUTE[] REINCARNATION_MASTER_KEY_SEARCH = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_LABEL, LABEL_REINCARNATION_MASTER)
+  };
+
+  /* Templates of the session keys of the key agreement */
+
+  static final CK_ATTRIBUTE[] EPHEMERAL_PUBLIC_KEY = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PUBLIC_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_EC),
+    attribute(PKCS11Constants.CKA_EC_PARAMS, HardwareSecurityModule.OID_SECP256R1)
+  };
+
+  static final CK_ATTRIBUTE[] EPHEMERAL_PRIVATE_KEY = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_EC),
+    attribute(PKCS11Constants.CKA_DERIVE, true)
+  };
+
+  static final CK_ATTRIBUTE[] MASTER_SECRET = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_GENERIC_SECRET),
+    attribute(PKCS11Constants.CKA_VALUE_LEN, 3L * HardwareSecurityModule.AES_256_KEY_LEN),
+    attribute(PKCS11Constants.CKA_DERIVE, true)
+  };
+
+  static final CK_ATTRIBUTE[] RESPONDER_MAC_KEY = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_VALUE_LEN, (long)HardwareSecurityModule.AES_256_KEY_LEN),
+    attribute(PKCS11Constants.CKA_VERIFY, true)
+  };
+
+  static final CK_ATTRIBUTE[] INITIATOR_MAC_KEY = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_VALUE_LEN, (long)HardwareSecurityModule.AES_256_KEY_LEN),
+    attribute(PKCS11Constants.CKA_SIGN, true)
+  };
+
+  static final CK_ATTRIBUTE[] EPHEMERAL_KBPK = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_VALUE_LEN, (long)HardwareSecurityModule.AES_256_KEY_LEN),
+    attribute(PKCS11Constants.CKA_WRAP, true),
+    attribute(HardwareSecurityModule.CKA_X9_143_KBH, KBH_EPHEMERAL_KBPK)
+  };
+
+  static final CK_ATTRIBUTE[] REINCARNATION_KEY = {
+    attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+    attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+    attribute(PKCS11Constants.CKA_WRAP, true),
+    attribute(PKCS11Constants.CKA_UNWRAP, true),
+    attribute(PKCS11Constants.CKA_LABEL, LABEL_X9_143_MASTER_KBPK),
+    attribute(HardwareSecurityModule.CKA_X9_143_KBH, KBH_REINCARNATION_KEY)
+  };
+
+  /* Mechanisms without per-call parameters */
+
+  static final CK_MECHANISM AES_ECB = mechanism(PKCS11Constants.CKM_AES_ECB, null);
+  static final CK_MECHANISM AES_CMAC = mechanism(PKCS11Constants.CKM_AES_CMAC, null);
+  static final CK_MECHANISM SHA256 = mechanism(PKCS11Constants.CKM_SHA256, null);
+  static final CK_MECHANISM ECDSA_SHA256 = mechanism(PKCS11Constants.CKM_ECDSA_SHA256, null);
+  static final CK_MECHANISM EC_KEY_PAIR_GEN = mechanism(PKCS11Constants.CKM_EC_KEY_PAIR_GEN, null);
+
+  /* Bit offsets of the responder MAC key, initiator MAC key and ephemeral KBPK in the secret */
+
+  static final CK_MECHANISM EXTRACT_RESPONDER_MAC_KEY =
+      mechanism(PKCS11Constants.CKM_EXTRACT_KEY_FROM_KEY, 0L);
+  static final CK_MECHANISM EXTRACT_INITIATOR_MAC_KEY =
+      mechanism(PKCS11Constants.CKM_EXTRACT_KEY_FROM_KEY, 256L);
+  static final CK_MECHANISM EXTRACT_EPHEMERAL_KBPK =
+      mechanism(PKCS11Constants.CKM_EXTRACT_KEY_FROM_KEY, 512L);
+
+  static final CK_MECHANISM WRAP_REINCARNATION_KEY =
+      mechanism(HardwareSecurityModule.CKM_X9_143_KEY_WRAP, KBH_REINCARNATION_KEY);
+  static final CK_MECHANISM WRAP_APPLICATION_SIGN_KEY =
+      mechanism(HardwareSecurityModule.CKM_X9_143_KEY_WRAP, KBH_APPLICATION_SIGN_KEY);
+
+  static CK_ATTRIBUTE attribute(long type, Object pValue) {
+    CK_ATTRIBUTE attribute = new CK_ATTRIBUTE();
+
+    attribute.type = type;
+    attribute.pValue = pValue;
+
+    return attribute;
+  }
+
+  static CK_MECHANISM mechanism(long type, Object pParameter) {
+    CK_MECHANISM mechanism = new CK_MECHANISM();
+
+    mechanism.mechanism = type;
+    mechanism.pParameter = pParameter;
+
+    return mechanism;
+  }
+}
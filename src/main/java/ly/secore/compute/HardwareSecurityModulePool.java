@@ -0,0 +1,323 @@
+/*
+ * ly.secore.compute.HardwareSecurityModulePool
+ * Load balancing of the provisioning operations over several HSM slots
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Spreads the provisioning operations over the HSMs of several slots or tokens.  Each operation
+ * goes to the HSM with the fewest operations outstanding.  The HSMs must hold the same keys, which
+ * is verified by their key check values when the pool is created.
+ *
+ * An HSM whose operation fails because its token or session is gone is taken out of rotation.
+ * Operations that stand on their own are then retried on the next HSM, the second and third step
+ * of a key agreement fail with the HSM that ran its first step, as the context refers to keys on
+ * it.  Other PKCS#11 errors, e.g. a device CMAC that does not verify, are the operation's own and
+ * go to the caller as they are.  An HSM out of rotation is probed at most once per probe interval
+ * by comparing its key check values with those of the pool, and returns once they match.
+ */
+public class HardwareSecurityModulePool implements ProvisioningHSM {
+  private static final Logger logger = LogManager.getLogger(HardwareSecurityModulePool.class);
+
+  public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 10000;
+
+  private interface Operation<T> {
+    T run(HardwareSecurityModule hsm) throws IOException, PKCS11Exception;
+  }
+
+  private static final class Member {
+    final HardwareSecurityModule hsm;
+    final String name;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicLong nextProbeNanos = new AtomicLong();
+    volatile boolean inRotation = true;
+
+    Member(HardwareSecurityModule hsm, String name) {
+      this.hsm = hsm;
+      this.name = name;
+    }
+  }
+
+  private final List<Member> members = new ArrayList<>();
+  private final Map<HardwareSecurityModule, Member> membersByHSM = new IdentityHashMap<>();
+  private final AtomicInteger nextMember = new AtomicInteger();
+  private final long probeIntervalNanos;
+  private Map<String, String> referenceKeyCheckValues;
+
+  /*
+   * Pools the given HSMs, the pool closes them on close.  Fails with an IOException if their key
+   * check values differ.
+   */
+  public HardwareSecurityModulePool(List<HardwareSecurityModule> hsms)
+      throws IOException, PKCS11Exception
+  {
+    this(hsms, DEFAULT_PROBE_INTERVAL_MILLIS);
+  }
+
+  /* Probes the HSMs out of rotation at most once per probeIntervalMillis each */
+  public HardwareSecurityModulePool(List<HardwareSecurityModule> hsms, long probeIntervalMillis)
+      throws IOException, PKCS11Exception
+  {
+    probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+
+    if (hsms.isEmpty()) {
+      throw new IllegalArgumentException("No HSM to pool");
+    }
+
+    for (HardwareSecurityModule hsm : hsms) {
+      Member member = new Member(hsm, "HSM " + members.size());
+      Map<String, String> keyCheckValues = hsm.getKeyCheckValues();
+
+      if (referenceKeyCheckValues == null) {
+        referenceKeyCheckValues = keyCheckValues;
+      } else if (!referenceKeyCheckValues.equals(keyCheckValues)) {
+        throw new IOException("Keys of " + member.name + " " + keyCheckValues +
+                              " differ from those of HSM 0 " + referenceKeyCheckValues);
+      }
+
+      members.add(member);
+      membersByHSM.put(hsm, member);
+    }
+  }
+
+  /*
+   * Opens the given slots of the PKCS#11 module.  The module is loaded once for all of them, see
+   * PKCS11ModuleRegistry.
+   */
+  public static HardwareSecurityModulePool open(String pkcs11ModuleFilename,
+                                                long[] slotIDs,
+                                                int maxSessions)
+      throws IOException, PKCS11Exception
+  {
+    List<HardwareSecurityModule> hsms = new ArrayList<>();
+
+    try {
+      for (long slotID : slotIDs) {
+        hsms.add(new HardwareSecurityModule(pkcs11ModuleFilename, slotID, maxSessions));
+      }
+
+      return new HardwareSecurityModulePool(hsms);
+    }
+    catch (IOException | PKCS11Exception | RuntimeException e) {
+      for (HardwareSecurityModule hsm : hsms) {
+        hsm.close();
+      }
+
+      throw e;
+    }
+  }
+
+  /* The number of HSMs still in rotation */
+  public int getHSMsInRotation() {
+    int count = 0;
+
+    for (Member member : members) {
+      if (member.inRotation) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  public Device.ManufacturingResetSecret deriveMfgResetSecret(int derivationInput)
+      throws IOException, PKCS11Exception
+  {
+    return runOnAny(hsm -> hsm.deriveMfgResetSecret(derivationInput));
+  }
+
+  public List<Device.ManufacturingResetSecret> deriveMfgResetSecrets(int[] derivationInputs)
+      throws IOException, PKCS11Exception
+  {
+    return runOnAny(hsm -> hsm.deriveMfgResetSecrets(derivationInputs));
+  }
+
+  public HardwareSecurityModule.SetIncKeyContext setIncKeyStep1(
+      byte[] reincarnationKeyDerivationInfo)
+      throws IOException, PKCS11Exception
+  {
+    return runOnAny(hsm -> {
+      HardwareSecurityModule.SetIncKeyContext ctx = hsm.setIncKeyStep1(
+          reincarnationKeyDerivationInfo);
+
+      ctx.hsm = hsm;
+
+      return ctx;
+    });
+  }
+
+  public void setIncKeyStep2(HardwareSecurityModule.SetIncKeyContext ctx)
+      throws IOException, PKCS11Exception
+  {
+    runOn(getMember(ctx), hsm -> {
+      hsm.setIncKeyStep2(ctx);
+      return null;
+    });
+  }
+
+  public void setIncKeyStep3(HardwareSecurityModule.SetIncKeyContext ctx)
+      throws IOException, PKCS11Exception
+  {
+    runOn(getMember(ctx), hsm -> {
+      hsm.setIncKeyStep3(ctx);
+      return null;
+    });
+  }
+
+  public void abandonSetIncKey(HardwareSecurityModule.SetIncKeyContext ctx) {
+    if (ctx != null && ctx.hsm != null) {
+      ctx.hsm.abandonSetIncKey(ctx);
+    }
+  }
+
+  public byte[] getAppKeyKeyblock(byte[] reincarnationKeyDerivationInput)
+      throws IOException, PKCS11Exception
+  {
+    return runOnAny(hsm -> hsm.getAppKeyKeyblock(reincarnationKeyDerivationInput));
+  }
+
+  public void startEphemeralKeyPool(int poolSize) {
+    for (Member member : members) {
+      member.hsm.startEphemeralKeyPool(poolSize);
+    }
+  }
+
+  public void close() {
+    for (Member member : members) {
+      member.hsm.close();
+    }
+  }
+
+  private Member getMember(HardwareSecurityModule.SetIncKeyContext ctx) {
+    Member member = membersByHSM.get(ctx.hsm);
+
+    if (member == null) {
+      throw new IllegalArgumentException("Key agreement not started on this pool");
+    }
+
+    return member;
+  }
+
+  /*
+   * Runs the operation on the least loaded HSM, and on the next one as long as HSMs drop out of
+   * rotation
+   */
+  private <T> T runOnAny(Operation<T> operation) throws IOException, PKCS11Exception {
+    probeOutOfRotation();
+
+    while (true) {
+      Member member = leastOutstanding();
+
+      if (member == null) {
+        throw new IOException("No HSM of the pool in rotation.");
+      }
+
+      try {
+        return runOn(member, operation);
+      }
+      catch (PKCS11Exception e) {
+        if (!HardwareSecurityModule.isSessionLost(e) || leastOutstanding() == null) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private <T> T runOn(Member member, Operation<T> operation) throws IOException, PKCS11Exception {
+    if (!member.inRotation) {
+      throw new IOException(member.name + " of the pool is out of rotation.");
+    }
+
+    member.outstanding.incrementAndGet();
+
+    try {
+      return operation.run(member.hsm);
+    }
+    catch (PKCS11Exception e) {
+      if (HardwareSecurityModule.isSessionLost(e) && member.inRotation) {
+        member.nextProbeNanos.set(System.nanoTime() + probeIntervalNanos);
+        member.inRotation = false;
+        logger.error("Taking " + member.name + " out of rotation: " + e.getMessage());
+      }
+
+      throw e;
+    }
+    finally {
+      member.outstanding.decrementAndGet();
+    }
+  }
+
+  /*
+   * Returns the HSMs out of rotation whose keys are back, e.g. once the token is plugged in again.
+   * Of concurrent callers only one probes an HSM, the others go on without waiting for it.
+   */
+  private void probeOutOfRotation() {
+    for (Member member : members) {
+      long nextProbeNanos = member.nextProbeNanos.get();
+      long now = System.nanoTime();
+
+      if (member.inRotation ||
+          now - nextProbeNanos < 0 ||
+          !member.nextProbeNanos.compareAndSet(nextProbeNanos, now + probeIntervalNanos))
+      {
+        continue;
+      }
+
+      try {
+        Map<String, String> keyCheckValues = member.hsm.getKeyCheckValues();
+
+        if (keyCheckValues.equals(referenceKeyCheckValues)) {
+          member.inRotation = true;
+          logger.info("Returning " + member.name + " to rotation");
+        } else {
+          logger.error("Keys of " + member.name + " " + keyCheckValues +
+                       " differ from those of the pool " + referenceKeyCheckValues);
+        }
+      }
+      catch (IOException | PKCS11Exception e) {
+        logger.warn(member.name + " still out of rotation: " + e.getMessage());
+      }
+    }
+  }
+
+  /* Ties go round-robin, so idle HSMs take turns */
+  private Member leastOutstanding() {
+    int first = Math.floorMod(nextMember.getAndIncrement(), members.size());
+    Member leastOutstanding = null;
+
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get((first + i) % members.size());
+
+      if (member.inRotation &&
+          (leastOutstanding == null ||
+           member.outstanding.get() < leastOutstanding.outstanding.get()))
+      {
+        leastOutstanding = member;
+      }
+    }
+
+    return leastOutstanding;
+  }
+}
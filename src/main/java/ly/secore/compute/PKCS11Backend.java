@@ -0,0 +1,214 @@
+/*
+ * ly.secore.compute.PKCS11Backend
+ * Cryptographic token operations of a PKCS#11 module
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.CK_TOKEN_INFO;
+import iaik.pkcs.pkcs11.wrapper.PKCS11;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Connector;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.IOException;
+
+/*
+ * Forwards every operation to a PKCS#11 module loaded through the IAIK wrapper.
+ */
+public class PKCS11Backend implements CryptoBackend {
+  private final PKCS11 p11;
+
+  public PKCS11Backend(PKCS11 p11) {
+    this.p11 = p11;
+  }
+
+  public PKCS11Backend(String pkcs11ModuleFilename) throws IOException {
+    this(PKCS11Connector.connectToPKCS11Module(pkcs11ModuleFilename));
+  }
+
+  public PKCS11 getPKCS11() {
+    return p11;
+  }
+
+  @Override
+  public void C_Initialize(Object pInitArgs, boolean useUtf8) throws PKCS11Exception {
+    p11.C_Initialize(pInitArgs, useUtf8);
+  }
+
+  @Override
+  public void C_Finalize(Object pReserved) throws PKCS11Exception {
+    p11.C_Finalize(pReserved);
+  }
+
+  @Override
+  public CK_TOKEN_INFO C_GetTokenInfo(long slotID) throws PKCS11Exception {
+    return p11.C_GetTokenInfo(slotID);
+  }
+
+  @Override
+  public long C_OpenSession(long slotID, long flags, Object pApplication, Object Notify)
+      throws PKCS11Exception
+  {
+    return p11.C_OpenSession(slotID, flags, pApplication, Notify);
+  }
+
+  @Override
+  public void C_CloseSession(long hSession) throws PKCS11Exception {
+    p11.C_CloseSession(hSession);
+  }
+
+  @Override
+  public void C_FindObjectsInit(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_FindObjectsInit(hSession, pTemplate, useUtf8);
+  }
+
+  @Override
+  public long[] C_FindObjects(long hSession, long ulMaxObjectCount) throws PKCS11Exception {
+    return p11.C_FindObjects(hSession, ulMaxObjectCount);
+  }
+
+  @Override
+  public void C_FindObjectsFinal(long hSession) throws PKCS11Exception {
+    p11.C_FindObjectsFinal(hSession);
+  }
+
+  @Override
+  public long C_CreateObject(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    return p11.C_CreateObject(hSession, pTemplate, useUtf8);
+  }
+
+  @Override
+  public void C_DestroyObject(long hSession, long hObject) throws PKCS11Exception {
+    p11.C_DestroyObject(hSession, hObject);
+  }
+
+  @Override
+  public void C_GetAttributeValue(long hSession, long hObject, CK_ATTRIBUTE[] pTemplate,
+                                  boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_GetAttributeValue(hSession, hObject, pTemplate, useUtf8);
+  }
+
+  @Override
+  public void C_EncryptInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_EncryptInit(hSession, pMechanism, hKey, useUtf8);
+  }
+
+  @Override
+  public byte[] C_Encrypt(long hSession, Object pParameter, byte[] pData)
+      throws PKCS11Exception
+  {
+    return p11.C_Encrypt(hSession, pParameter, pData);
+  }
+
+  @Override
+  public void C_DigestInit(long hSession, CK_MECHANISM pMechanism, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_DigestInit(hSession, pMechanism, useUtf8);
+  }
+
+  @Override
+  public void C_DigestUpdate(long hSession, byte[] pPart) throws PKCS11Exception {
+    p11.C_DigestUpdate(hSession, pPart);
+  }
+
+  @Override
+  public byte[] C_DigestFinal(long hSession) throws PKCS11Exception {
+    return p11.C_DigestFinal(hSession);
+  }
+
+  @Override
+  public void C_SignInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_SignInit(hSession, pMechanism, hKey, useUtf8);
+  }
+
+  @Override
+  public byte[] C_Sign(long hSession, byte[] pData) throws PKCS11Exception {
+    return p11.C_Sign(hSession, pData);
+  }
+
+  @Override
+  public void C_SignUpdate(long hSession, byte[] pPart) throws PKCS11Exception {
+    p11.C_SignUpdate(hSession, pPart);
+  }
+
+  @Override
+  public byte[] C_SignFinal(long hSession) throws PKCS11Exception {
+    return p11.C_SignFinal(hSession);
+  }
+
+  @Override
+  public void C_VerifyInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    p11.C_VerifyInit(hSession, pMechanism, hKey, useUtf8);
+  }
+
+  @Override
+  public void C_Verify(long hSession, byte[] pData, byte[] pSignature) throws PKCS11Exception {
+    p11.C_Verify(hSession, pData, pSignature);
+  }
+
+  @Override
+  public long C_GenerateKey(long hSession, CK_MECHANISM pMechanism, CK_ATTRIBUTE[] pTemplate,
+                            boolean useUtf8)
+      throws PKCS11Exception
+  {
+    return p11.C_GenerateKey(hSession, pMechanism, pTemplate, useUtf8);
+  }
+
+  @Override
+  public long[] C_GenerateKeyPair(long hSession, CK_MECHANISM pMechanism,
+                                  CK_ATTRIBUTE[] pPublicKeyTemplate,
+                                  CK_ATTRIBUTE[] pPrivateKeyTemplate,
+                                  boolean useUtf8)
+      throws PKCS11Exception
+  {
+    return p11.C_GenerateKeyPair(hSession,
+                                 pMechanism,
+                                 pPublicKeyTemplate,
+                                 pPrivateKeyTemplate,
+                                 useUtf8);
+  }
+
+  @Override
+  public byte[] C_WrapKey(long hSession, CK_MECHANISM pMechanism, long hWrappingKey, long hKey,
+                          boolean useUtf8)
+      throws PKCS11Exception
+  {
+    return p11.C_WrapKey(hSession, pMechanism, hWrappingKey, hKey, useUtf8);
+  }
+
+  @Override
+  public long C_DeriveKey(long hSession, CK_MECHANISM pMechanism, long hBaseKey,
+                          CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    return p11.C_DeriveKey(hSession, pMechanism, hBaseKey, pTemplate, useUtf8);
+  }
+
+  @Override
+  public void C_GenerateRandom(long hSession, byte[] randomData) throws PKCS11Exception {
+    p11.C_GenerateRandom(hSession, randomData);
+  }
+}
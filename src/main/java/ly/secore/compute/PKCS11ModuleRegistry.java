@@ -0,0 +1,117 @@
+/*
+ * ly.secore.compute.PKCS11ModuleRegistry
+ * Process-wide registry of the loaded PKCS#11 modules
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Loads and initializes every PKCS#11 module once per process.  C_Initialize and C_Finalize
+ * act on the whole module, so all users of a module in this JVM share one backend: the first
+ * acquire loads and initializes the module, the last release finalizes it.  In between, a new
+ * HardwareSecurityModule on the module costs only its sessions.
+ *
+ * Modules are initialized for OS locking, the sessions of the pool use them from many threads.
+ * A module someone else initialized already (CKR_CRYPTOKI_ALREADY_INITIALIZED) is used as is and
+ * left initialized on the last release.
+ */
+public final class PKCS11ModuleRegistry {
+  private static final Map<String, Module> modules = new HashMap<>();
+
+  private static final class Module {
+    final PKCS11Backend backend;
+    final boolean finalizeOnRelease;
+    int references;
+
+    Module(PKCS11Backend backend, boolean finalizeOnRelease) {
+      this.backend = backend;
+      this.finalizeOnRelease = finalizeOnRelease;
+    }
+  }
+
+  private PKCS11ModuleRegistry() {
+  }
+
+  /* Returns the initialized backend of the module, each acquire must be matched by a release */
+  public static synchronized PKCS11Backend acquire(String pkcs11ModuleFilename)
+      throws IOException, PKCS11Exception
+  {
+    String key = moduleKey(pkcs11ModuleFilename);
+    Module module = modules.get(key);
+
+    if (module == null) {
+      PKCS11Backend backend = new PKCS11Backend(pkcs11ModuleFilename);
+      boolean finalizeOnRelease = true;
+
+      try {
+        backend.C_Initialize(HardwareSecurityModule.osLockingInitArgs(), true);
+      }
+      catch (PKCS11Exception e) {
+        if (e.getErrorCode() != PKCS11Constants.CKR_CRYPTOKI_ALREADY_INITIALIZED) {
+          throw e;
+        }
+
+        finalizeOnRelease = false;
+      }
+
+      module = new Module(backend, finalizeOnRelease);
+      modules.put(key, module);
+    }
+
+    module.references++;
+
+    return module.backend;
+  }
+
+  public static synchronized void release(PKCS11Backend backend) throws PKCS11Exception {
+    for (Map.Entry<String, Module> entry : modules.entrySet()) {
+      Module module = entry.getValue();
+
+      if (module.backend != backend) {
+        continue;
+      }
+
+      if (--module.references == 0) {
+        modules.remove(entry.getKey());
+
+        if (module.finalizeOnRelease) {
+          backend.C_Finalize(null);
+        }
+      }
+
+      return;
+    }
+
+    throw new IllegalStateException("PKCS#11 module not acquired from the registry");
+  }
+
+  /*
+   * Modules are told apart by their real path, so a relative path, a symbolic link and the path
+   * itself share one backend.  A bare name the dynamic loader finds on its search path is taken
+   * as is.
+   */
+  private static String moduleKey(String pkcs11ModuleFilename) {
+    try {
+      return Path.of(pkcs11ModuleFilename).toRealPath().toString();
+    }
+    catch (IOException e) {
+      return pkcs11ModuleFilename;
+    }
+  }
+}
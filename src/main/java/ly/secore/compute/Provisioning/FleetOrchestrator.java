@@ -0,0 +1,208 @@
+/*
+ * ly.secore.compute.Provisioning.FleetOrchestrator
+ * Concurrent provisioning of devices on all attached fixtures
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.Provisioning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import ly.secore.compute.Device;
+import ly.secore.compute.HardwareSecurityModule;
+import ly.secore.compute.ProvisioningHSM;
+
+/*
+ * Provisions the devices on all given fixtures at once, with a dedicated worker thread per
+ * fixture.  The device protocol of a fixture is strictly sequential, so each worker blocks on its
+ * own device only; the HSM is shared between all stations, which run their HSM operations on
+ * sessions of its session pool concurrently.
+ */
+public class FleetOrchestrator {
+  public static final String UART_PATH_PREFIX = "/dev/ttyDDM-";
+
+  private final ProvisioningHSM hsm;
+  private final ProvisioningPlan plan;
+  private final Device.Connector connector;
+
+  public FleetOrchestrator(ProvisioningHSM hsm, ProvisioningPlan plan) {
+    this(hsm, plan, Device.TTY);
+  }
+
+  /*
+   * Opens the devices with the given connector instead of on their TTYs, e.g. to provision the
+   * devices of a DeviceSimulator.Fleet.
+   */
+  public FleetOrchestrator(ProvisioningHSM hsm,
+                           ProvisioningPlan plan,
+                           Device.Connector connector)
+  {
+    this.hsm = hsm;
+    this.plan = plan;
+    this.connector = connector;
+  }
+
+  public static Path[] findUartPaths() {
+    Path uartPathPrefix = Paths.get(UART_PATH_PREFIX);
+
+    return findUartPaths(uartPathPrefix.getParent(), uartPathPrefix.getFileName().toString());
+  }
+
+  static Path[] findUartPaths(Path directory, String prefix) {
+    try (Stream<Path> stream = Files.find(directory,
+                                          1,
+                                          (path, attrs) -> {
+                                              return !path.equals(directory) &&
+                                                     path.getFileName().toString()
+                                                         .startsWith(prefix);
+                                          })) {
+      return stream.collect(Collectors.toList()).toArray(new Path[0]);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to obtain list of " + directory.resolve(prefix) +
+                                 "* devices", e);
+    }
+  }
+
+  public List<StationResult> provision() throws InterruptedException {
+    return provision(List.of(findUartPaths()));
+  }
+
+  /*
+   * Stations started by provisionOnHotPlug.  Closing stops accepting new fixtures, stations
+   * already running finish.
+   */
+  public static final class HotPlugStations implements AutoCloseable {
+    private final UartPathWatcher watcher;
+    private final ExecutorService workers;
+
+    private HotPlugStations(UartPathWatcher watcher, ExecutorService workers) {
+      this.watcher = watcher;
+      this.workers = workers;
+    }
+
+    public void close() {
+      watcher.close();
+      workers.shutdown();
+    }
+  }
+
+  /*
+   * Provisions every fixture whose UART appears from now on, as soon as the file system reports
+   * it.  At most maxStations stations run at once, further fixtures wait for a worker; a fixture
+   * that is unplugged and plugged in again while its station is still queued or running gets no
+   * second station.  The result of every station is handed to the consumer on its worker thread.
+   */
+  public HotPlugStations provisionOnHotPlug(int maxStations,
+                                            Consumer<StationResult> resultConsumer)
+    throws IOException
+  {
+    return provisionOnHotPlug(Path.of(UART_PATH_PREFIX), maxStations, resultConsumer);
+  }
+
+  HotPlugStations provisionOnHotPlug(Path uartPathPrefix,
+                                     int maxStations,
+                                     Consumer<StationResult> resultConsumer)
+    throws IOException
+  {
+    AtomicInteger stationIndex = new AtomicInteger();
+    Set<Path> stationPaths = ConcurrentHashMap.newKeySet();
+    ExecutorService workers = Executors.newFixedThreadPool(maxStations, runnable -> {
+      Thread thread = new Thread(runnable, "station-hotplug-" + stationIndex.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    UartPathWatcher.Listener listener = new UartPathWatcher.Listener() {
+      public void uartPathAdded(Path uartPath) {
+        if (!stationPaths.add(uartPath)) {
+          return;
+        }
+
+        try {
+          workers.execute(() -> {
+            try {
+              resultConsumer.accept(new Station(uartPath, plan, hsm, connector).call());
+            }
+            finally {
+              stationPaths.remove(uartPath);
+            }
+          });
+        }
+        catch (RejectedExecutionException e) {
+          /* Closed */
+          stationPaths.remove(uartPath);
+        }
+      }
+
+      public void uartPathRemoved(Path uartPath) {
+        /* A station on a removed fixture fails on its own */
+      }
+    };
+
+    try {
+      return new HotPlugStations(new UartPathWatcher(uartPathPrefix, listener), workers);
+    }
+    catch (IOException e) {
+      workers.shutdown();
+      throw e;
+    }
+  }
+
+  public List<StationResult> provision(List<Path> uartPaths) throws InterruptedException {
+    List<StationResult> results = new ArrayList<>(uartPaths.size());
+    List<Future<StationResult>> futures = new ArrayList<>(uartPaths.size());
+    AtomicInteger stationIndex = new AtomicInteger();
+
+    if (uartPaths.isEmpty()) {
+      return results;
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(uartPaths.size(), runnable -> {
+      Thread thread = new Thread(runnable, "station-" + stationIndex.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      for (Path uartPath : uartPaths) {
+        futures.add(workers.submit(new Station(uartPath, plan, hsm, connector)));
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        }
+        catch (ExecutionException e) {
+          results.add(new StationResult(uartPaths.get(i), null, e, 0));
+        }
+      }
+    }
+    finally {
+      workers.shutdownNow();
+    }
+
+    return results;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * ly.secore.compute.Provisioning.ProvisioningPlan
+ * Steps to run on every device of a provisioning fleet
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.Provisioning;
+
+import java.nio.ByteBuffer;
+
+public class ProvisioningPlan {
+  public enum Step {
+    FACTORY_FLASH,
+    CONNECT,
+    LOCK,
+    REINCARNATION_KEY,
+    APP_KEY,
+    CLOSE
+  }
+
+  private ByteBuffer initialFirmwareImage;
+  private boolean lock = true;
+  private boolean injectReincarnationKey = true;
+  private boolean loadAppKey = true;
+  private long readyTimeoutMillis = 60000;
+
+  public void setInitialFirmwareImage(ByteBuffer initialFirmwareImage) {
+    this.initialFirmwareImage = initialFirmwareImage;
+  }
+
+  /* A read-only view of the image, positioned at its start.  Null if the plan does not flash. */
+  public ByteBuffer getInitialFirmwareImage() {
+    return initialFirmwareImage != null ? initialFirmwareImage.asReadOnlyBuffer() : null;
+  }
+
+  public void setLock(boolean lock) {
+    this.lock = lock;
+  }
+
+  public boolean isLock() {
+    return lock;
+  }
+
+  public void setInjectReincarnationKey(boolean injectReincarnationKey) {
+    this.injectReincarnationKey = injectReincarnationKey;
+  }
+
+  public boolean isInjectReincarnationKey() {
+    return injectReincarnationKey;
+  }
+
+  public void setLoadAppKey(boolean loadAppKey) {
+    this.loadAppKey = loadAppKey;
+  }
+
+  public boolean isLoadAppKey() {
+    return loadAppKey;
+  }
+
+  public void setReadyTimeoutMillis(long readyTimeoutMillis) {
+    this.readyTimeoutMillis = readyTimeoutMillis;
+  }
+
+  public long getReadyTimeoutMillis() {
+    return readyTimeoutMillis;
+  }
+}
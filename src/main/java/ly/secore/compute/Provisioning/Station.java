@@ -0,0 +1,140 @@
+/*
+ * ly.secore.compute.Provisioning.Station
+ * Provisioning of the device attached to one fixture
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.Provisioning;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import ly.secore.compute.Device;
+import ly.secore.compute.HardwareSecurityModule;
+import ly.secore.compute.ProvisioningHSM;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Runs the steps of a plan on the device attached to one fixture.  Every step that makes the
+ * device reboot is followed by polling the fixture until a new service session opens.  A lock
+ * only takes effect with a reboot, so the station requests one and waits until the device has
+ * gone away and come back before it injects keys.
+ */
+class Station implements Callable<StationResult> {
+  private static final Logger logger = LogManager.getLogger(Station.class);
+
+  private final Path uartPath;
+  private final ProvisioningPlan plan;
+  private final ProvisioningHSM hsm;
+  private final Device.Connector connector;
+  private ProvisioningPlan.Step step;
+
+  Station(Path uartPath,
+          ProvisioningPlan plan,
+          ProvisioningHSM hsm,
+          Device.Connector connector)
+  {
+    this.uartPath = uartPath;
+    this.plan = plan;
+    this.hsm = hsm;
+    this.connector = connector;
+  }
+
+  public StationResult call() {
+    long start = System.nanoTime();
+    Device device = null;
+
+    try {
+      ByteBuffer initialFirmwareImage = plan.getInitialFirmwareImage();
+      String tty = uartPath.toString();
+
+      if (initialFirmwareImage != null) {
+        step = ProvisioningPlan.Step.FACTORY_FLASH;
+        device = connector.connect(tty);
+        device.factoryFlash(initialFirmwareImage);
+        device.close();
+        device = null;
+      }
+
+      step = ProvisioningPlan.Step.CONNECT;
+      device = Device.openWhenReady(connector, tty, plan.getReadyTimeoutMillis());
+
+      if (plan.isLock()) {
+        Device.ManufacturingResetSecret mfgResetSecret;
+
+        step = ProvisioningPlan.Step.LOCK;
+
+        mfgResetSecret = hsm.deriveMfgResetSecret(device.getMfgResetSecretDerivationInput());
+
+        device.lock(mfgResetSecret);
+        device.requestDeferredReboot();
+        device.closeServiceSession();
+        device.close();
+        device = null;
+        device = Device.awaitLifecycleStateChange(
+            connector, tty, Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST,
+            plan.getReadyTimeoutMillis());
+      }
+
+      if (plan.isInjectReincarnationKey()) {
+        HardwareSecurityModule.SetIncKeyContext ctx;
+
+        step = ProvisioningPlan.Step.REINCARNATION_KEY;
+
+        ctx = hsm.setIncKeyStep1(device.getReincarnationKeyDerivationInfo());
+
+        try {
+          device.setIncKeyStep1(ctx);
+
+          hsm.setIncKeyStep2(ctx);
+          device.setIncKeyStep2(ctx);
+
+          hsm.setIncKeyStep3(ctx);
+          device.setIncKeyStep3(ctx);
+        }
+        finally {
+          hsm.abandonSetIncKey(ctx);
+        }
+      }
+
+      if (plan.isLoadAppKey()) {
+        byte[] keyblock;
+
+        step = ProvisioningPlan.Step.APP_KEY;
+
+        keyblock = hsm.getAppKeyKeyblock(device.getReincarnationKeyDerivationInfo());
+
+        device.setAppKey(keyblock);
+      }
+
+      step = ProvisioningPlan.Step.CLOSE;
+      device.closeServiceSession();
+
+      return new StationResult(uartPath, null, null, System.nanoTime() - start);
+    }
+    catch (Exception e) {
+      logger.error("Provisioning of " + uartPath + " failed in step " + step + ": " +
+                   e.getMessage());
+
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+
+      return new StationResult(uartPath, step, e, System.nanoTime() - start);
+    }
+    finally {
+      if (device != null) {
+        device.close();
+      }
+    }
+  }
+}
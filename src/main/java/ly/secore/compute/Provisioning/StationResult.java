@@ -0,0 +1,65 @@
+/*
+ * ly.secore.compute.Provisioning.StationResult
+ * Outcome of provisioning the device at one station
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.Provisioning;
+
+import java.nio.file.Path;
+
+public class StationResult {
+  private final Path uartPath;
+  private final ProvisioningPlan.Step failedStep;
+  private final Exception error;
+  private final long elapsedNanos;
+
+  public StationResult(Path uartPath,
+                       ProvisioningPlan.Step failedStep,
+                       Exception error,
+                       long elapsedNanos)
+  {
+    this.uartPath = uartPath;
+    this.failedStep = failedStep;
+    this.error = error;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public Path getUartPath() {
+    return uartPath;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  public ProvisioningPlan.Step getFailedStep() {
+    return failedStep;
+  }
+
+  public Exception getError() {
+    return error;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    if (isSuccess()) {
+      return String.format("%s: provisioned in %.1f s", uartPath, elapsedNanos / 1e9);
+    }
+
+    return String.format("%s: %s failed after %.1f s: %s",
+                         uartPath, failedStep, elapsedNanos / 1e9, error.getMessage());
+  }
+}
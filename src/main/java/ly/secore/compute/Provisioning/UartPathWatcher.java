@@ -0,0 +1,166 @@
+/*
+ * ly.secore.compute.Provisioning.UartPathWatcher
+ * Hot-plug detection of the UARTs of the fixtures
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute.Provisioning;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Watches the directory of the fixture UARTs and reports /dev/ttyDDM-* paths as they appear and
+ * disappear.  The watch service of the platform blocks until the file system reports a change
+ * (inotify on Linux), there is no polling.  Should the file system drop events, the directory is
+ * scanned again and the differences are reported.
+ *
+ * The listener is called on the thread of the watcher, it must not block.
+ */
+public class UartPathWatcher implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(UartPathWatcher.class);
+
+  public interface Listener {
+    void uartPathAdded(Path uartPath);
+    void uartPathRemoved(Path uartPath);
+  }
+
+  private final Path directory;
+  private final String prefix;
+  private final Listener listener;
+  private final WatchService watchService;
+  private final Set<Path> uartPaths = new ConcurrentSkipListSet<>();
+  private final Thread thread;
+
+  public UartPathWatcher(Listener listener) throws IOException {
+    this(Path.of(FleetOrchestrator.UART_PATH_PREFIX), listener);
+  }
+
+  /* Watches for paths that start with the given path prefix, e.g. /dev/ttyDDM- */
+  UartPathWatcher(Path pathPrefix, Listener listener) throws IOException {
+    this.directory = pathPrefix.getParent();
+    this.prefix = pathPrefix.getFileName().toString();
+    this.listener = listener;
+
+    watchService = FileSystems.getDefault().newWatchService();
+
+    try {
+      /* Register before the initial scan, so no path slips through in between */
+      directory.register(watchService,
+                         StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_DELETE);
+    }
+    catch (IOException e) {
+      watchService.close();
+      throw e;
+    }
+
+    uartPaths.addAll(scan());
+
+    thread = new Thread(this::watch, "uart-path-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /* The paths present right now, sorted */
+  public Path[] getUartPaths() {
+    return uartPaths.toArray(new Path[0]);
+  }
+
+  public void close() {
+    try {
+      watchService.close();
+    }
+    catch (IOException e) {
+      logger.error("Failed to close watch service: " + e.getMessage());
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            rescan();
+            continue;
+          }
+
+          Path uartPath = directory.resolve((Path)event.context());
+
+          if (!uartPath.getFileName().toString().startsWith(prefix)) {
+            continue;
+          }
+
+          if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            added(uartPath);
+          } else {
+            removed(uartPath);
+          }
+        }
+
+        if (!key.reset()) {
+          logger.error("Watching " + directory + " stopped, it is no longer accessible.");
+          break;
+        }
+      }
+    }
+    catch (ClosedWatchServiceException e) {
+      /* Closed */
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void added(Path uartPath) {
+    if (uartPaths.add(uartPath)) {
+      listener.uartPathAdded(uartPath);
+    }
+  }
+
+  private void removed(Path uartPath) {
+    if (uartPaths.remove(uartPath)) {
+      listener.uartPathRemoved(uartPath);
+    }
+  }
+
+  private void rescan() {
+    Set<Path> present = scan();
+
+    for (Path uartPath : uartPaths) {
+      if (!present.contains(uartPath)) {
+        removed(uartPath);
+      }
+    }
+
+    for (Path uartPath : present) {
+      added(uartPath);
+    }
+  }
+
+  private Set<Path> scan() {
+    return new HashSet<>(Arrays.asList(FleetOrchestrator.findUartPaths(directory, prefix)));
+  }
+}
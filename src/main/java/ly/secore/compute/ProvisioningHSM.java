@@ -0,0 +1,49 @@
+/*
+ * ly.secore.compute.ProvisioningHSM
+ * HSM operations of the provisioning steps
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * The HSM operations a station runs per device.  A HardwareSecurityModule runs them on one slot,
+ * a HardwareSecurityModulePool spreads them over several.  The three steps of a key agreement
+ * must be run on the same ProvisioningHSM.
+ */
+public interface ProvisioningHSM extends AutoCloseable {
+  Device.ManufacturingResetSecret deriveMfgResetSecret(int derivationInput)
+      throws IOException, PKCS11Exception;
+
+  List<Device.ManufacturingResetSecret> deriveMfgResetSecrets(int[] derivationInputs)
+      throws IOException, PKCS11Exception;
+
+  HardwareSecurityModule.SetIncKeyContext setIncKeyStep1(byte[] reincarnationKeyDerivationInfo)
+      throws IOException, PKCS11Exception;
+
+  void setIncKeyStep2(HardwareSecurityModule.SetIncKeyContext ctx)
+      throws IOException, PKCS11Exception;
+
+  void setIncKeyStep3(HardwareSecurityModule.SetIncKeyContext ctx)
+      throws IOException, PKCS11Exception;
+
+  /* Releases what a key agreement holds on the HSM if it ends before step 3 */
+  void abandonSetIncKey(HardwareSecurityModule.SetIncKeyContext ctx);
+
+  byte[] getAppKeyKeyblock(byte[] reincarnationKeyDerivationInput)
+      throws IOException, PKCS11Exception;
+
+  void close();
+}
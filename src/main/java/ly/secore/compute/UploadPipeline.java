@@ -0,0 +1,145 @@
+/*
+ * ly.secore.compute.UploadPipeline
+ * Staged, windowed chunk upload to devices powered by compute secore.ly Firmware
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Splits an upload into a producer, which reads and stages the next chunks from the input stream,
+ * and the calling thread, which hands the staged chunks to the device.  The number of chunks in
+ * flight between both is bounded by the window, so a slow device never causes the whole image to
+ * be buffered.  A pipeline is good for a single upload.
+ */
+class UploadPipeline {
+  interface ChunkSink {
+    void send(byte[] chunk, int len) throws IOException;
+  }
+
+  UploadPipeline(int chunkSize, int window) {
+    if (chunkSize <= 0 || window <= 0) {
+      throw new IllegalArgumentException("Chunk size and window must be positive.");
+    }
+
+    free = new ArrayBlockingQueue<>(window);
+    staged = new ArrayBlockingQueue<>(window + 1);
+
+    for (int i = 0; i < window; i++) {
+      free.add(new Chunk(chunkSize));
+    }
+  }
+
+  Device.UploadStatistics run(InputStream data, ChunkSink sink)
+    throws IOException
+  {
+    if (used) {
+      throw new IllegalStateException("Upload pipeline already used.");
+    }
+
+    Thread producer = new Thread(() -> stage(data), "upload-stager");
+    long bytes = 0;
+    int chunks = 0;
+    long start = System.nanoTime();
+
+    used = true;
+    producer.setDaemon(true);
+    producer.start();
+
+    try {
+      while (true) {
+        Chunk chunk = staged.take();
+
+        if (chunk.len < 0) {
+          free.add(chunk);
+          break;
+        }
+
+        try {
+          sink.send(chunk.data, chunk.len);
+        }
+        finally {
+          free.add(chunk);
+        }
+
+        bytes += chunk.len;
+        chunks++;
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Upload interrupted.", e);
+    }
+    finally {
+      producer.interrupt();
+      staged.drainTo(free);
+    }
+
+    if (producerError != null) {
+      throw producerError;
+    }
+
+    return new Device.UploadStatistics(bytes, chunks, System.nanoTime() - start);
+  }
+
+  private static final class Chunk {
+    final byte[] data;
+    int len;
+
+    Chunk(int size) {
+      data = new byte[size];
+    }
+  }
+
+  private final BlockingQueue<Chunk> free;
+  private final BlockingQueue<Chunk> staged;
+  private volatile IOException producerError;
+  private boolean used;
+
+  private void stage(InputStream data) {
+    Chunk chunk = null;
+
+    try {
+      while (true) {
+        chunk = free.take();
+        chunk.len = data.readNBytes(chunk.data, 0, chunk.data.length);
+
+        if (chunk.len <= 0) {
+          break;
+        }
+
+        staged.put(chunk);
+        chunk = null;
+      }
+    }
+    catch (IOException e) {
+      producerError = e;
+    }
+    catch (InterruptedException e) {
+      /* The consumer gave up, nobody is waiting for the end marker. */
+      return;
+    }
+
+    if (chunk == null) {
+      chunk = free.poll();
+    }
+
+    if (chunk != null) {
+      chunk.len = -1;
+      staged.add(chunk);
+    }
+  }
+}
@@ -10,6 +10,7 @@ class AppUpdate {
     {
       computeDevice.openServiceSession(1);
       computeDevice.applicationUpdate(new FileInputStream(args[1]));
+      System.out.println(computeDevice.getLastUploadStatistics());
       computeDevice.closeServiceSession();
     }
     catch (Exception e)
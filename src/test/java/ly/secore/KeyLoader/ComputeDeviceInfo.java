@@ -8,15 +8,17 @@ class ComputeDeviceInfo {
   public static void main(String args[]) {
     try (Device computeDevice = new Device(args[0]))
     {
+      Device.Snapshot snapshot;
       Device.ManufacturingInfo mfgInfo;
       Device.ReincarnationInfo incInfo;
       byte[] derivationInfo;
 
       computeDevice.openServiceSession(1);
 
-      mfgInfo = computeDevice.getManufacturingInfo();
-      incInfo = computeDevice.getReincarnationInfo();
-      derivationInfo = computeDevice.getReincarnationKeyDerivationInfo();
+      snapshot = computeDevice.snapshot();
+      mfgInfo = snapshot.getManufacturingInfo();
+      incInfo = snapshot.getReincarnationInfo();
+      derivationInfo = snapshot.getReincarnationKeyDerivationInfo();
 
       computeDevice.closeServiceSession();
 
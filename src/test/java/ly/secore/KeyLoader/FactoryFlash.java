@@ -2,13 +2,13 @@ package ly.secore.KeyLoader;
 
 import ly.secore.compute.Device;
 
-import java.io.FileInputStream;
+import java.nio.file.Paths;
 
 class FactoryFlash {
   public static void main(String args[]) {
     try (Device computeDevice = new Device(args[0]))
     {
-      computeDevice.factoryFlash(new FileInputStream(args[1]));
+      computeDevice.factoryFlash(Paths.get(args[1]));
     }
     catch (Exception e)
     {
@@ -0,0 +1,35 @@
+package ly.secore.KeyLoader;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import ly.secore.compute.HardwareSecurityModule;
+import ly.secore.compute.Provisioning.FleetOrchestrator;
+import ly.secore.compute.Provisioning.ProvisioningPlan;
+import ly.secore.compute.Provisioning.StationResult;
+
+class FleetProvisioning {
+  public static void main(String args[]) {
+    try (HardwareSecurityModule keyLoader = new HardwareSecurityModule("/usr/local/lib/libcryptok.so", 0);
+         FileChannel initialFirmwareImage = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ))
+    {
+      ProvisioningPlan plan = new ProvisioningPlan();
+      long start = System.nanoTime();
+
+      keyLoader.startEphemeralKeyPool(4);
+      plan.setInitialFirmwareImage(initialFirmwareImage.map(FileChannel.MapMode.READ_ONLY,
+                                                            0,
+                                                            initialFirmwareImage.size()));
+
+      for (StationResult result : new FleetOrchestrator(keyLoader, plan).provision()) {
+        System.out.println(result);
+      }
+
+      System.out.format("Fleet provisioned in %.1f s\n", (System.nanoTime() - start) / 1e9);
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace(System.out);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package ly.secore.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * The serial execution of the calls of an AsyncDevice on a shared executor, with simulated
+ * devices.
+ */
+class AsyncDeviceTest {
+  private static final int CALLS = 200;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void callsRunInSubmissionOrder() throws Exception {
+    AsyncDevice[] devices = {
+      new AsyncDevice(new DeviceSimulator(1).connect(), executor),
+      new AsyncDevice(new DeviceSimulator(2).connect(), executor)
+    };
+    List<List<Integer>> completed = new ArrayList<>();
+    List<CompletableFuture<Void>> calls = new ArrayList<>();
+
+    for (int d = 0; d < devices.length; d++) {
+      completed.add(Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    for (int i = 0; i < CALLS; i++) {
+      for (int d = 0; d < devices.length; d++) {
+        List<Integer> deviceCompleted = completed.get(d);
+        int call = i;
+
+        calls.add(devices[d].run(device -> {
+          if (ThreadLocalRandom.current().nextInt(8) == 0) {
+            Thread.yield();
+          }
+
+          deviceCompleted.add(call);
+        }));
+      }
+    }
+
+    CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+
+    for (int d = 0; d < devices.length; d++) {
+      assertEquals(CALLS, completed.get(d).size());
+
+      for (int i = 0; i < CALLS; i++) {
+        assertEquals(i, completed.get(d).get(i));
+      }
+
+      devices[d].close();
+    }
+  }
+
+  /* A failed call does not stop the calls submitted after it */
+  @Test
+  void failedCallKeepsOrder() throws Exception {
+    AsyncDevice device = new AsyncDevice(new DeviceSimulator(1).connect(), executor);
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    CompletableFuture<Void> failed;
+    CompletableFuture<Void> next;
+
+    device.run(d -> completed.add(0));
+    failed = device.run(d -> {
+      throw new IllegalStateException("failed");
+    });
+    next = device.run(d -> completed.add(2));
+
+    assertThrows(CompletionException.class, failed::join);
+    next.join();
+    assertEquals(List.of(0, 2), completed);
+
+    device.close();
+  }
+
+  @Test
+  void closeFromOwnCallFailsFast() throws Exception {
+    AsyncDevice device = new AsyncDevice(new DeviceSimulator(1).connect(), executor);
+    CompletableFuture<Void> closed = device.run(d -> device.close());
+    CompletionException e = assertThrows(CompletionException.class, closed::join);
+
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+
+    device.close();
+  }
+}
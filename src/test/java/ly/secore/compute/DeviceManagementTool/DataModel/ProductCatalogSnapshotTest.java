@@ -0,0 +1,127 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Round trips of the bundled catalog through a snapshot, and snapshots that must not be used.
+ */
+class ProductCatalogSnapshotTest {
+    private static final String CATALOG =
+        "/ly/secore/compute/DeviceManagementTool/product-descriptors.json";
+
+    @TempDir
+    Path directory;
+
+    private byte[] json;
+    private byte[] contentHash;
+    private ProductCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (InputStream stream = getClass().getResourceAsStream(CATALOG)) {
+            json = stream.readAllBytes();
+        }
+
+        contentHash = ProductCatalogSnapshot.contentHash(json);
+        catalog = ProductCatalog.read(new ByteArrayInputStream(json));
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        ProductCatalog snapshotCatalog = ProductCatalogSnapshot.read(
+            new ByteArrayInputStream(snapshot(catalog, contentHash)), contentHash);
+
+        assertEquals(describe(catalog), describe(snapshotCatalog));
+        assertEquals(catalog.getDeviceTypeDescriptors().length,
+                     snapshotCatalog.getDeviceTypeDescriptors().length);
+        assertEquals(catalog.getDevicePersonalityDescriptors().length,
+                     snapshotCatalog.getDevicePersonalityDescriptors().length);
+    }
+
+    @Test
+    void staleContentHash() throws Exception {
+        byte[] otherContentHash = ProductCatalogSnapshot.contentHash(new byte[0]);
+
+        assertNull(ProductCatalogSnapshot.read(
+            new ByteArrayInputStream(snapshot(catalog, contentHash)), otherContentHash));
+    }
+
+    @Test
+    void corruptPayload() throws Exception {
+        byte[] snapshot = snapshot(catalog, contentHash);
+
+        snapshot[snapshot.length - 1] ^= 1;
+
+        assertThrows(IOException.class,
+                     () -> ProductCatalogSnapshot.read(new ByteArrayInputStream(snapshot),
+                                                       contentHash));
+    }
+
+    /* A catalog ProductCatalog.read would not accept is not accepted from a snapshot either */
+    @Test
+    void invalidCatalog() throws Exception {
+        ProductDescriptor product = new ProductDescriptor();
+        byte[] snapshot;
+
+        product.setProductKey("885-RD100000000/12");
+        snapshot = snapshot(new ProductCatalog(new ProductDescriptor[] { product }), contentHash);
+
+        assertThrows(IOException.class,
+                     () -> ProductCatalogSnapshot.read(new ByteArrayInputStream(snapshot),
+                                                       contentHash));
+    }
+
+    /* A damaged snapshot file is replaced by one compiled from the JSON */
+    @Test
+    void loadReplacesCorruptSnapshot() throws Exception {
+        Path snapshotPath = directory.resolve("product-catalog.snapshot");
+        byte[] snapshot = snapshot(catalog, contentHash);
+
+        snapshot[snapshot.length - 1] ^= 1;
+        Files.write(snapshotPath, snapshot);
+
+        assertEquals(describe(catalog),
+                     describe(ProductCatalogSnapshot.load(json, snapshotPath)));
+        assertArrayEquals(snapshot(catalog, contentHash), Files.readAllBytes(snapshotPath));
+    }
+
+    private static byte[] snapshot(ProductCatalog catalog, byte[] contentHash)
+        throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        ProductCatalogSnapshot.write(catalog, contentHash, stream);
+
+        return stream.toByteArray();
+    }
+
+    // The keys and links of the products, which the snapshot has to preserve
+    private static String describe(ProductCatalog catalog) {
+        StringBuilder description = new StringBuilder();
+
+        for (ProductDescriptor product : catalog.getProductDescriptors()) {
+            description.append(product.getProductKey()).append(' ')
+                .append(product.getDeviceTypeDescriptor().getType()).append(' ')
+                .append(product.getDeviceTypeDescriptor().getFirmwareDescriptor().getVersion())
+                .append(' ')
+                .append(product.getDevicePersonalityDescriptor().getPersonality()).append(' ')
+                .append(product.getDevicePersonalityDescriptor().getApplication().getVersion())
+                .append('\n');
+        }
+
+        return description.toString();
+    }
+}
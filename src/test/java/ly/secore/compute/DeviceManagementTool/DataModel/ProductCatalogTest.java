@@ -0,0 +1,56 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Lookups of the product keys devices report in a catalog.
+ */
+class ProductCatalogTest {
+    private static final String CATALOG =
+        "{\"product_descriptors\": [" +
+        "  {\"product_key\": \"885-RD100000000/12\", \"type\": \"885-RD10000xx00/12\"," +
+        "   \"personality\": \"885-RDxxxxx00xx/xx\"}]," +
+        " \"device_type_descriptors\": [" +
+        "  {\"type\": \"885-RD10000xx00/12\"}," +
+        "  {\"type\": \"885-RD11000xx00/12\"}]," +
+        " \"device_personality_descriptors\": [" +
+        "  {\"personality\": \"885-RDxxxxx00xx/xx\"}]}";
+
+    static ProductCatalog read(String json) throws Exception {
+        return ProductCatalog.read(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void listedProduct() throws Exception {
+        ProductCatalog catalog = read(CATALOG);
+
+        assertEquals(0, catalog.findProductIndex("885-RD100000000/12"));
+        assertSame(catalog.getProductDescriptors()[0],
+                   catalog.findProductDescriptor("885-RD100000000/12"));
+    }
+
+    /* The second type is in the catalog, but no product refers to it */
+    @Test
+    void unlistedProductOfCatalogTypeAndPersonality() throws Exception {
+        ProductCatalog catalog = read(CATALOG);
+        ProductDescriptor product = catalog.findProductDescriptor("885-RD110000000/12");
+
+        assertEquals(-1, catalog.findProductIndex("885-RD110000000/12"));
+        assertEquals("885-RD110000000/12", product.getProductKey());
+        assertSame(catalog.getDeviceTypeDescriptors()[1], product.getDeviceTypeDescriptor());
+        assertSame(catalog.getDevicePersonalityDescriptors()[0],
+                   product.getDevicePersonalityDescriptor());
+    }
+
+    @Test
+    void unknownType() throws Exception {
+        assertNull(read(CATALOG).findProductDescriptor("885-RD120000000/12"));
+    }
+}
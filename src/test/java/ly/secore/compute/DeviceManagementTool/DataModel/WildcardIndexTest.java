@@ -0,0 +1,116 @@
+package ly.secore.compute.DeviceManagementTool.DataModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Lookups of the WildcardIndex against a linear scan over the patterns, which is what the index
+ * replaced.
+ */
+class WildcardIndexTest {
+    @Test
+    void catalogPatterns() {
+        Map<String, String> patterns = new LinkedHashMap<>();
+        WildcardIndex<String> index;
+
+        patterns.put("885-RDxxxxx00xx/xx", "personality");
+        patterns.put("885-RD10000xx00/12", "type");
+        patterns.put("885-RD100000000/12", "product");
+        index = new WildcardIndex<>(patterns);
+
+        assertEquals("product", index.get("885-RD100000000/12"));
+        assertEquals("type", index.get("885-RD100001200/12"));
+        assertEquals("personality", index.get("885-RD123450067/89"));
+        assertNull(index.get("885-RD12345006/89"));
+        assertNull(index.get("885-HD123450067/89"));
+        assertNull(index.get(""));
+        assertNull(index.get(null));
+    }
+
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(885);
+
+        for (int round = 0; round < 20; round++) {
+            Map<String, Integer> patterns = new LinkedHashMap<>();
+            WildcardIndex<Integer> index;
+
+            for (int i = 0; i < 50; i++) {
+                patterns.putIfAbsent(randomString(random, "abx", 1 + random.nextInt(6)), i);
+            }
+
+            index = new WildcardIndex<>(patterns);
+
+            for (int i = 0; i < 500; i++) {
+                String key = randomString(random, "abc", random.nextInt(8));
+
+                assertEquals(linearScan(patterns, key), index.get(key), key);
+            }
+        }
+    }
+
+    /* Patterns whose complete automaton has 2^20 states, of which only the ones used are built */
+    @Test
+    void automatonStaysBounded() {
+        Map<String, Integer> patterns = new LinkedHashMap<>();
+        Random random = new Random(885);
+        WildcardIndex<Integer> index;
+
+        for (int i = 0; i < 20; i++) {
+            patterns.put("x".repeat(i) + "a" + "x".repeat(39 - i), i);
+        }
+
+        index = new WildcardIndex<>(patterns);
+
+        for (int i = 0; i < 2000; i++) {
+            String key = randomString(random, "ab", 40);
+
+            assertEquals(linearScan(patterns, key), index.get(key), key);
+        }
+
+        assertTrue(index.getStateCount() <= WildcardIndex.MAX_STATES);
+    }
+
+    // The first of the matching patterns with the fewest wildcards
+    private static <V> V linearScan(Map<String, V> patterns, String key) {
+        V best = null;
+        int bestWildcards = Integer.MAX_VALUE;
+
+        for (Map.Entry<String, V> pattern : patterns.entrySet()) {
+            String p = pattern.getKey();
+            int wildcards = 0;
+            boolean matches = p.length() == key.length();
+
+            for (int i = 0; matches && i < p.length(); i++) {
+                if (p.charAt(i) == WildcardIndex.WILDCARD) {
+                    wildcards++;
+                } else {
+                    matches = p.charAt(i) == key.charAt(i);
+                }
+            }
+
+            if (matches && wildcards < bestWildcards) {
+                best = pattern.getValue();
+                bestWildcards = wildcards;
+            }
+        }
+
+        return best;
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder string = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return string.toString();
+    }
+}
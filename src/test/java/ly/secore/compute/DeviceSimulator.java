@@ -0,0 +1,716 @@
+/*
+ * ly.secore.compute.DeviceSimulator
+ * In-process simulation of a device powered by compute secore.ly Firmware
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.KeyAgreement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * A DDM 885 that lives in the Java heap and implements the compute-device-proxy contract, so a
+ * Device can be driven without the proxy library and without hardware.  The simulator keeps the
+ * manufacturing, reincarnation and lifecycle state, accepts factory flashes and uploads, and runs
+ * the responder side of the reincarnation key agreement: it checks the initiator signature and
+ * CMAC, and unwraps the reincarnation key and later the application key it receives.
+ *
+ * Each call takes the configured latency, each byte of an image the time the configured bandwidth
+ * allows; both default to 0, i.e. as fast as possible.  A factory flash makes the device
+ * unavailable for the configured reboot time, a lock or a deferred reboot when the service
+ * session is closed.
+ *
+ * The lifecycle is simplified: the device starts in Manufacturing Test with firmware present and
+ * moves to Personalization when it is locked.
+ */
+public class DeviceSimulator {
+  private static final Logger logger = LogManager.getLogger(DeviceSimulator.class);
+
+  /*
+   * Simulated devices by name, e.g. to provision all of them with a FleetOrchestrator.
+   */
+  public static class Fleet implements Device.Connector {
+    private final Map<String, DeviceSimulator> devices = new ConcurrentHashMap<>();
+
+    public DeviceSimulator add(String name, DeviceSimulator simulator) {
+      devices.put(name, simulator);
+      return simulator;
+    }
+
+    public DeviceSimulator get(String name) {
+      return devices.get(name);
+    }
+
+    public List<Path> getPaths() {
+      List<Path> paths = new ArrayList<>(devices.size());
+
+      for (String name : devices.keySet()) {
+        paths.add(Paths.get(name));
+      }
+
+      return paths;
+    }
+
+    public Device connect(String name) throws IOException {
+      DeviceSimulator simulator = devices.get(name);
+
+      if (simulator == null) {
+        throw new IOException("No simulated device " + name + ".");
+      }
+
+      return simulator.connect();
+    }
+  }
+
+  private static final int IMAGE_TYPE_APP0_UPDATE = 2;
+  private static final int IMAGE_TYPE_KEY_BLOCK   = 6;
+
+  private static final int KEY_AGREEMENT_SECRET_LEN = 3 * HardwareSecurityModule.AES_256_KEY_LEN;
+
+  private final SecureRandom random = new SecureRandom();
+  private final Proxy proxy = new Proxy();
+
+  private long latencyMicros;
+  private long bytesPerSecond;
+  private long rebootMillis;
+
+  /* Device state */
+
+  private final int serialNumber;
+  private final ZonedDateTime timeOfProduction;
+  private final ZonedDateTime timeOfReincarnation;
+  private int lifecycleState = Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST;
+  private int[] mfgResetSecret;
+  private byte[] reincarnationKey;
+  private byte[] appKey;
+  private long firmwareImageLen;
+  private long applicationImageLen;
+
+  private boolean serviceSession;
+  private boolean rebootPending;
+  private long rebootUntilNanos;
+
+  /* Upload in progress */
+
+  private int uploadImageType = -1;
+  private long uploadLen;
+  private ByteArrayOutputStream uploadData;
+  private byte[] keyblock;
+
+  /* Key agreement in progress */
+
+  private byte[] initiatorRandom;
+  private byte[] initiatorAuthPubKey;
+  private byte[] responderRandom;
+  private byte[] responderEphPubKey;
+  private KeyPair responderEphKeyPair;
+  private byte[] keyAgreementSecret;
+  private byte[] macTranscript;
+
+  public DeviceSimulator(int serialNumber) {
+    this.serialNumber = serialNumber;
+    this.timeOfProduction = ZonedDateTime.now();
+    this.timeOfReincarnation = timeOfProduction;
+    this.rebootUntilNanos = System.nanoTime();
+  }
+
+  /* Round trip time of every call */
+  public void setLatencyMicros(long latencyMicros) {
+    this.latencyMicros = latencyMicros;
+  }
+
+  public long getLatencyMicros() {
+    return latencyMicros;
+  }
+
+  /* Transfer rate of factory flashes and uploads, 0 for unlimited */
+  public void setBytesPerSecond(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public void setRebootMillis(long rebootMillis) {
+    this.rebootMillis = rebootMillis;
+  }
+
+  public long getRebootMillis() {
+    return rebootMillis;
+  }
+
+  public Device connect() {
+    return new Device(proxy, new Pointer(serialNumber), Device.TTY_IMAGE_CHUNK_SIZE);
+  }
+
+  public int getSerialNumber() {
+    return serialNumber;
+  }
+
+  public synchronized int getLifecycleState() {
+    return lifecycleState;
+  }
+
+  public synchronized boolean isLocked() {
+    return mfgResetSecret != null;
+  }
+
+  public synchronized boolean hasReincarnationKey() {
+    return reincarnationKey != null;
+  }
+
+  public synchronized boolean hasAppKey() {
+    return appKey != null;
+  }
+
+  public synchronized long getFirmwareImageLength() {
+    return firmwareImageLen;
+  }
+
+  public synchronized long getApplicationImageLength() {
+    return applicationImageLen;
+  }
+
+  private void delay(long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void transfer(int len) {
+    if (bytesPerSecond > 0) {
+      delay(len * 1000000000L / bytesPerSecond);
+    }
+  }
+
+  private void reboot() {
+    serviceSession = false;
+    rebootPending = false;
+    uploadImageType = -1;
+    uploadData = null;
+    keyblock = null;
+    clearKeyAgreement();
+    rebootUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rebootMillis);
+  }
+
+  private boolean isRebooting() {
+    return System.nanoTime() - rebootUntilNanos < 0;
+  }
+
+  private void clearKeyAgreement() {
+    initiatorRandom = null;
+    initiatorAuthPubKey = null;
+    responderRandom = null;
+    responderEphPubKey = null;
+    responderEphKeyPair = null;
+    keyAgreementSecret = null;
+    macTranscript = null;
+  }
+
+  private byte[] keyAgreementKey(int index) {
+    return Arrays.copyOfRange(keyAgreementSecret,
+                              index * HardwareSecurityModule.AES_256_KEY_LEN,
+                              (index + 1) * HardwareSecurityModule.AES_256_KEY_LEN);
+  }
+
+  private int fail(String operation) {
+    logger.debug("Simulated device {}: {} rejected.", serialNumber, operation);
+    return -1;
+  }
+
+  /*
+   * The compute-device-proxy contract, served by the state of the simulator.  Every call is
+   * serialized on the simulator, like the calls on the serial link of a real device.
+   */
+  private class Proxy implements ComputeDeviceProxyLibrary {
+    public Pointer compute_device_proxy_tcp_new(String host,
+                                                String service,
+                                                compute_device_vlog_cb_t vlog,
+                                                Pointer app_data)
+    {
+      return null;
+    }
+
+    public Pointer compute_device_proxy_tty_new(String dev_tty_fn,
+                                                compute_device_vlog_cb_t vlog,
+                                                compute_device_reset_cb_t reset,
+                                                Pointer app_data)
+    {
+      return null;
+    }
+
+    public void compute_device_delete(Pointer compute_device) {}
+
+    public int compute_device_proxy_tty_reset_cb(Pointer compute_device) {
+      return -1;
+    }
+
+    public int compute_device_open_service_session(Pointer compute_device, int timeout) {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (isRebooting()) {
+          return fail("open_service_session");
+        }
+
+        serviceSession = true;
+        return 0;
+      }
+    }
+
+    public int compute_device_close_service_session(Pointer compute_device) {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("close_service_session");
+        }
+
+        serviceSession = false;
+
+        if (rebootPending) {
+          reboot();
+        }
+
+        return 0;
+      }
+    }
+
+    public int compute_device_request_deferred_reboot(Pointer compute_device) {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("request_deferred_reboot");
+        }
+
+        rebootPending = true;
+        return 0;
+      }
+    }
+
+    public int compute_device_factory_flash(Pointer compute_device,
+                                            compute_device_get_image_chunk_cb_t get_image_chunk)
+    {
+      Memory chunk = new Memory(Device.TTY_IMAGE_CHUNK_SIZE);
+      long imageLen = 0;
+      int len;
+
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      while ((len = get_image_chunk.invoke(null, chunk, (int)chunk.size())) > 0) {
+        transfer(len);
+        imageLen += len;
+      }
+
+      synchronized (DeviceSimulator.this) {
+        if (len < 0) {
+          return fail("factory_flash");
+        }
+
+        firmwareImageLen = imageLen;
+        reboot();
+        return 0;
+      }
+    }
+
+    public int compute_device_get_mfg_reset_secret_derivation_input(
+            Pointer         compute_device,
+            IntByReference  mfg_reset_secret_derivation_input)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("get_mfg_reset_secret_derivation_input");
+        }
+
+        mfg_reset_secret_derivation_input.setValue(serialNumber);
+        return 0;
+      }
+    }
+
+    public int compute_device_lock(Pointer                         compute_device,
+                                   Device.ManufacturingResetSecret mfg_reset)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession ||
+            lifecycleState != Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST)
+        {
+          return fail("lock");
+        }
+
+        mfgResetSecret = mfg_reset.mfg_reset_secret.clone();
+        lifecycleState = Device.LifecycleInfo.LIFECYCLE_STATE_PERSONALIZATION;
+        rebootPending = true;
+        return 0;
+      }
+    }
+
+    public int compute_device_set_inc_key_step_1(
+            Pointer compute_device,
+            byte[] initiator_random,
+            byte[] initiator_auth_pub_key,
+            Memory responder_random,
+            Memory responder_eph_pub_key)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        KeyPairGenerator keyPairGenerator;
+
+        if (!serviceSession) {
+          return fail("set_inc_key_step_1");
+        }
+
+        clearKeyAgreement();
+
+        try {
+          keyPairGenerator = KeyPairGenerator.getInstance("EC");
+          keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"), random);
+          responderEphKeyPair = keyPairGenerator.generateKeyPair();
+        }
+        catch (GeneralSecurityException e) {
+          logger.error("Simulated device " + serialNumber + ": " + e.getMessage());
+          return fail("set_inc_key_step_1");
+        }
+
+        initiatorRandom = initiator_random.clone();
+        initiatorAuthPubKey = initiator_auth_pub_key.clone();
+        responderRandom = new byte[HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN];
+        random.nextBytes(responderRandom);
+
+        responderEphPubKey = new byte[HardwareSecurityModule.SECP256R1_PUBLIC_KEY_LEN];
+        responderEphPubKey[0] = 0x04; /* OCTET STRING */
+        responderEphPubKey[1] = 0x41; /* Length: 65 Bytes */
+        System.arraycopy(SoftwareCryptoBackend.encodeECPoint(
+                             (ECPublicKey)responderEphKeyPair.getPublic()),
+                         0, responderEphPubKey, 2, 65);
+
+        responder_random.write(0, responderRandom, 0, responderRandom.length);
+        responder_eph_pub_key.write(0, responderEphPubKey, 0, responderEphPubKey.length);
+        return 0;
+      }
+    }
+
+    public int compute_device_set_inc_key_step_2(
+            Pointer compute_device,
+            byte[] initiator_eph_pub_key,
+            byte[] initiator_signature,
+            Memory responder_cmac)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession || responderEphKeyPair == null) {
+          return fail("set_inc_key_step_2");
+        }
+
+        try {
+          Signature ecdsa = Signature.getInstance("SHA256withECDSAinP1363Format");
+          KeyAgreement ecdh = KeyAgreement.getInstance("ECDH");
+          byte[] sharedData;
+          byte[] responderCMAC;
+
+          ecdsa.initVerify(SoftwareCryptoBackend.decodeECPoint(initiatorAuthPubKey));
+          ecdsa.update(HardwareSecurityModule.getTranscript(responderRandom,
+                                                            initiatorRandom,
+                                                            initiator_eph_pub_key));
+
+          if (!ecdsa.verify(initiator_signature)) {
+            clearKeyAgreement();
+            return fail("set_inc_key_step_2 (initiator signature)");
+          }
+
+          ecdh.init(responderEphKeyPair.getPrivate());
+          ecdh.doPhase(SoftwareCryptoBackend.decodeECPoint(initiator_eph_pub_key), true);
+          sharedData = HardwareSecurityModule.getTranscript(responderRandom, initiatorRandom);
+          keyAgreementSecret = SoftwareCryptoBackend.x963Kdf(ecdh.generateSecret(),
+                                                             sharedData,
+                                                             KEY_AGREEMENT_SECRET_LEN);
+          responderEphKeyPair = null;
+
+          macTranscript = HardwareSecurityModule.getTranscript(initiatorRandom,
+                                                               initiatorAuthPubKey,
+                                                               responderRandom,
+                                                               responderEphPubKey,
+                                                               initiator_eph_pub_key,
+                                                               initiator_signature);
+          responderCMAC = SoftwareCryptoBackend.aesCmac(keyAgreementKey(0), macTranscript);
+
+          responder_cmac.write(0, responderCMAC, 0, responderCMAC.length);
+          return 0;
+        }
+        catch (GeneralSecurityException | PKCS11Exception e) {
+          clearKeyAgreement();
+          return fail("set_inc_key_step_2 (" + e.getMessage() + ")");
+        }
+      }
+    }
+
+    public int compute_device_set_inc_key_step_3(
+            Pointer compute_device,
+            byte[] initiator_cmac,
+            byte[] initiator_keyblock)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession || keyAgreementSecret == null) {
+          return fail("set_inc_key_step_3");
+        }
+
+        try {
+          byte[] key;
+
+          if (!MessageDigest.isEqual(initiator_cmac,
+                                     SoftwareCryptoBackend.aesCmac(keyAgreementKey(1),
+                                                                   macTranscript)))
+          {
+            return fail("set_inc_key_step_3 (initiator CMAC)");
+          }
+
+          key = SoftwareCryptoBackend.unwrapKeyBlock(initiator_keyblock, keyAgreementKey(2));
+
+          if (key == null) {
+            return fail("set_inc_key_step_3 (key block)");
+          }
+
+          reincarnationKey = key;
+          appKey = null;
+          return 0;
+        }
+        catch (GeneralSecurityException e) {
+          return fail("set_inc_key_step_3 (" + e.getMessage() + ")");
+        }
+        finally {
+          clearKeyAgreement();
+        }
+      }
+    }
+
+    public int compute_device_get_manufacturing_info(
+            Pointer                  compute_device,
+            Device.ManufacturingInfo mfg_info)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("get_manufacturing_info");
+        }
+
+        mfg_info.setDeviceClass(Device.ManufacturingInfo.DDM_885_DEVICE_CLASS);
+        mfg_info.setDeviceType(Device.ManufacturingInfo.DEVICE_TYPE_DDM_885_2_020326_06D);
+        mfg_info.setEngineeringChangeLevel((byte)0);
+        mfg_info.setSerialNumber(serialNumber);
+        mfg_info.setTimeOfProduction(timeOfProduction);
+        mfg_info.setMACAddress(new byte[] {
+          0x02, 0x00, (byte)(serialNumber >> 24), (byte)(serialNumber >> 16),
+          (byte)(serialNumber >> 8), (byte)serialNumber
+        });
+        mfg_info.write();
+        return 0;
+      }
+    }
+
+    public int compute_device_get_reincarnation_info(
+            Pointer                  compute_device,
+            Device.ReincarnationInfo inc_info)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("get_reincarnation_info");
+        }
+
+        inc_info.setTimeOfReincarnation(timeOfReincarnation);
+        inc_info.setDevicePersonality(Device.DEVICE_PERSONALITY_PCI_POI);
+        inc_info.setOperatingMode(Device.OPERATING_MODE_DEVELOPMENT);
+        inc_info.setMasterKeyId(0x000DEB06);
+        inc_info.write();
+        return 0;
+      }
+    }
+
+    public int compute_device_start_upload(
+            Pointer compute_device,
+            int     image_type,
+            String  name)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession || uploadImageType != -1) {
+          return fail("start_upload");
+        }
+
+        uploadImageType = image_type;
+        uploadLen = 0;
+
+        /* Only key blocks are kept, of other images only the length */
+        if (image_type == IMAGE_TYPE_KEY_BLOCK) {
+          uploadData = new ByteArrayOutputStream();
+        }
+
+        return 0;
+      }
+    }
+
+    public int compute_device_upload_chunk(
+            Pointer compute_device,
+            byte[]  chunk,
+            int     len)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+      transfer(len);
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession || uploadImageType == -1) {
+          return fail("upload_chunk");
+        }
+
+        if (uploadData != null) {
+          uploadData.write(chunk, 0, len);
+        }
+
+        uploadLen += len;
+        return 0;
+      }
+    }
+
+    public int compute_device_finalize_upload(
+            Pointer compute_device)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession || uploadImageType == -1) {
+          return fail("finalize_upload");
+        }
+
+        if (uploadImageType == IMAGE_TYPE_KEY_BLOCK) {
+          keyblock = uploadData.toByteArray();
+        }
+        else if (uploadImageType == IMAGE_TYPE_APP0_UPDATE) {
+          applicationImageLen = uploadLen;
+        }
+
+        uploadImageType = -1;
+        uploadData = null;
+        return 0;
+      }
+    }
+
+    public int compute_device_set_app_key(
+            Pointer compute_device)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        byte[] key;
+
+        if (!serviceSession || keyblock == null || reincarnationKey == null) {
+          return fail("set_app_key");
+        }
+
+        try {
+          key = SoftwareCryptoBackend.unwrapKeyBlock(keyblock, reincarnationKey);
+        }
+        catch (GeneralSecurityException e) {
+          key = null;
+        }
+
+        keyblock = null;
+
+        if (key == null) {
+          return fail("set_app_key (key block)");
+        }
+
+        appKey = key;
+        return 0;
+      }
+    }
+
+    public int compute_device_get_885_info(
+            Pointer        compute_device,
+            Memory         product_key,
+            IntByReference order_id)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("get_885_info");
+        }
+
+        product_key.setString(0, String.format("SIM-%013d", serialNumber & 0xFFFFFFFFL));
+        order_id.setValue(0);
+        return 0;
+      }
+    }
+
+    public int compute_device_get_lifecycle_info(
+            Pointer              compute_device,
+            Device.LifecycleInfo lifecycle_info)
+    {
+      delay(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+
+      synchronized (DeviceSimulator.this) {
+        if (!serviceSession) {
+          return fail("get_lifecycle_info");
+        }
+
+        lifecycle_info.state = lifecycleState;
+        lifecycle_info.timestamp = (int)timeOfProduction.toEpochSecond();
+        lifecycle_info.tamper_status = 0;
+        lifecycle_info.write();
+        return 0;
+      }
+    }
+  }
+}
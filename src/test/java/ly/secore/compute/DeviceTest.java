@@ -0,0 +1,111 @@
+package ly.secore.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * A Device driven through the proxy contract by a simulated device.
+ */
+class DeviceTest {
+  private static final String TTY = "ttyDDM-0";
+  private static final long READY_TIMEOUT_MILLIS = 5000;
+
+  private Device device;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    device = new DeviceSimulator(1).connect();
+    device.openServiceSession(1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    device.close();
+  }
+
+  /* What a caller does to the structures it gets does not reach the snapshot of the session */
+  @Test
+  void snapshotCannotBeModified() throws Exception {
+    Device.Snapshot snapshot = device.snapshot();
+
+    snapshot.getManufacturingInfo().setSerialNumber(2);
+    snapshot.getManufacturingInfo().getMACAddress()[0] ^= 1;
+    snapshot.getLifecycleInfo().state = Device.LifecycleInfo.LIFECYCLE_STATE_OPERATION;
+    snapshot.getDDM885Info().productKey = null;
+
+    assertEquals(1, device.snapshot().getManufacturingInfo().getSerialNumber());
+    assertEquals(device.getManufacturingInfo().getMACAddress()[0],
+                 device.snapshot().getManufacturingInfo().getMACAddress()[0]);
+    assertEquals(Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST,
+                 device.snapshot().getLifecycleInfo().state);
+    assertEquals(device.getDDM885Info().productKey,
+                 device.snapshot().getDDM885Info().productKey);
+  }
+
+  /* A reboot too quick to be seen is recognized by the lifecycle state it leads to */
+  @Test
+  void instantRebootAfterLock() throws Exception {
+    DeviceSimulator.Fleet fleet = new DeviceSimulator.Fleet();
+    Device rebooted;
+
+    fleet.add(TTY, new DeviceSimulator(2));
+    lockAndReboot(fleet.connect(TTY));
+    rebooted = Device.awaitLifecycleStateChange(
+        fleet, TTY, Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST, READY_TIMEOUT_MILLIS);
+
+    try {
+      assertEquals(Device.LifecycleInfo.LIFECYCLE_STATE_PERSONALIZATION,
+                   rebooted.snapshot().getLifecycleInfo().state);
+    }
+    finally {
+      rebooted.close();
+    }
+  }
+
+  @Test
+  void slowRebootAfterLock() throws Exception {
+    DeviceSimulator.Fleet fleet = new DeviceSimulator.Fleet();
+    Device rebooted;
+
+    fleet.add(TTY, new DeviceSimulator(2)).setRebootMillis(500);
+    lockAndReboot(fleet.connect(TTY));
+    rebooted = Device.awaitLifecycleStateChange(
+        fleet, TTY, Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST, READY_TIMEOUT_MILLIS);
+
+    try {
+      assertEquals(Device.LifecycleInfo.LIFECYCLE_STATE_PERSONALIZATION,
+                   rebooted.snapshot().getLifecycleInfo().state);
+    }
+    finally {
+      rebooted.close();
+    }
+  }
+
+  @Test
+  void deviceThatKeepsItsStateTimesOut() throws Exception {
+    DeviceSimulator.Fleet fleet = new DeviceSimulator.Fleet();
+
+    fleet.add(TTY, new DeviceSimulator(2));
+
+    assertThrows(IOException.class,
+                 () -> Device.awaitLifecycleStateChange(
+                     fleet, TTY, Device.LifecycleInfo.LIFECYCLE_STATE_MANUFACTURING_TEST, 500));
+  }
+
+  private static void lockAndReboot(Device device) throws IOException {
+    try {
+      device.openServiceSession(1);
+      device.lock(new Device.ManufacturingResetSecret());
+      device.requestDeferredReboot();
+      device.closeServiceSession();
+    }
+    finally {
+      device.close();
+    }
+  }
+}
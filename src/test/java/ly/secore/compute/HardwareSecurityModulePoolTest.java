@@ -0,0 +1,124 @@
+package ly.secore.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Rotation of the HSMs of a pool, with two slots of one SoftwareCryptoBackend that fail on demand.
+ */
+class HardwareSecurityModulePoolTest {
+  /* Fails the operations on the keys of a slot with the given error */
+  private static class FaultyBackend extends SoftwareCryptoBackend {
+    final Map<Long, Long> errorsBySlot = new ConcurrentHashMap<>();
+    private final Map<Long, Long> slotsBySession = new ConcurrentHashMap<>();
+
+    @Override
+    public void C_Finalize(Object pReserved) {
+      /* Shared by the slots */
+    }
+
+    @Override
+    public long C_OpenSession(long slotID, long flags, Object pApplication, Object Notify) {
+      long hSession = super.C_OpenSession(slotID, flags, pApplication, Notify);
+
+      slotsBySession.put(hSession, slotID);
+
+      return hSession;
+    }
+
+    @Override
+    public void C_EncryptInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+        throws PKCS11Exception
+    {
+      failIfRequested(hSession);
+      super.C_EncryptInit(hSession, pMechanism, hKey, useUtf8);
+    }
+
+    @Override
+    public void C_GetAttributeValue(long hSession, long hObject, CK_ATTRIBUTE[] pTemplate,
+                                    boolean useUtf8)
+        throws PKCS11Exception
+    {
+      failIfRequested(hSession);
+      super.C_GetAttributeValue(hSession, hObject, pTemplate, useUtf8);
+    }
+
+    private void failIfRequested(long hSession) throws PKCS11Exception {
+      Long slotID = slotsBySession.get(hSession);
+      Long errorCode = slotID != null ? errorsBySlot.get(slotID) : null;
+
+      if (errorCode != null) {
+        throw new PKCS11Exception(errorCode);
+      }
+    }
+  }
+
+  private FaultyBackend backend;
+  private HardwareSecurityModulePool pool;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    backend = new FaultyBackend();
+    backend.provisionKeys();
+    pool = new HardwareSecurityModulePool(List.of(new HardwareSecurityModule(backend, 0, 1),
+                                                  new HardwareSecurityModule(backend, 1, 1)),
+                                          0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  void lostTokenIsTakenOutOfRotation() throws Exception {
+    backend.errorsBySlot.put(1L, PKCS11Constants.CKR_DEVICE_REMOVED);
+
+    for (int i = 0; i < 4; i++) {
+      assertNotNull(pool.deriveMfgResetSecret(i));
+    }
+
+    assertEquals(1, pool.getHSMsInRotation());
+  }
+
+  @Test
+  void operationErrorKeepsRotation() throws Exception {
+    backend.errorsBySlot.put(0L, PKCS11Constants.CKR_FUNCTION_FAILED);
+    backend.errorsBySlot.put(1L, PKCS11Constants.CKR_FUNCTION_FAILED);
+
+    assertEquals(PKCS11Constants.CKR_FUNCTION_FAILED,
+                 assertThrows(PKCS11Exception.class, () -> pool.deriveMfgResetSecret(0))
+                     .getErrorCode());
+    assertEquals(2, pool.getHSMsInRotation());
+  }
+
+  @Test
+  void recoveredTokenReturnsToRotation() throws Exception {
+    backend.errorsBySlot.put(0L, PKCS11Constants.CKR_DEVICE_ERROR);
+    backend.errorsBySlot.put(1L, PKCS11Constants.CKR_DEVICE_ERROR);
+
+    assertThrows(PKCS11Exception.class, () -> pool.deriveMfgResetSecret(0));
+    assertEquals(0, pool.getHSMsInRotation());
+
+    /* Probed, but still failing */
+    assertThrows(IOException.class, () -> pool.deriveMfgResetSecret(0));
+    assertEquals(0, pool.getHSMsInRotation());
+
+    backend.errorsBySlot.remove(1L);
+    assertNotNull(pool.deriveMfgResetSecret(0));
+    assertEquals(1, pool.getHSMsInRotation());
+  }
+}
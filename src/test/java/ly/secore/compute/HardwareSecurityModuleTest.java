@@ -0,0 +1,162 @@
+package ly.secore.compute;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/*
+ * The session pool of the HardwareSecurityModule, on the in-process SoftwareCryptoBackend.
+ */
+class HardwareSecurityModuleTest {
+  /* Records the sessions the HSM opens, so a test can close one behind its back */
+  private static class RecordingBackend extends SoftwareCryptoBackend {
+    final List<Long> openedSessions = new ArrayList<>();
+
+    @Override
+    public long C_OpenSession(long slotID, long flags, Object pApplication, Object Notify) {
+      long hSession = super.C_OpenSession(slotID, flags, pApplication, Notify);
+
+      openedSessions.add(hSession);
+
+      return hSession;
+    }
+  }
+
+  @Test
+  void lostSessionIsReplaced() throws Exception {
+    RecordingBackend backend = new RecordingBackend();
+
+    backend.provisionKeys();
+    backend.openedSessions.clear();
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+      PKCS11Exception e;
+
+      backend.C_CloseSession(backend.openedSessions.get(0));
+
+      e = assertThrows(PKCS11Exception.class, () -> hsm.deriveMfgResetSecret(0x12345678));
+      assertEquals(PKCS11Constants.CKR_SESSION_HANDLE_INVALID, e.getErrorCode());
+
+      assertNotNull(hsm.deriveMfgResetSecret(0x12345678));
+      assertEquals(2, backend.openedSessions.size());
+    }
+  }
+
+  /* A device CMAC that does not verify fails the key agreement, not the session */
+  @Test
+  void failedKeyAgreementKeepsSessionAndLeavesNoObjects() throws Exception {
+    RecordingBackend backend = new RecordingBackend();
+
+    backend.provisionKeys();
+    backend.openedSessions.clear();
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+      int objectCount = backend.getObjectCount();
+      HardwareSecurityModule.SetIncKeyContext ctx = hsm.setIncKeyStep1(new byte[32]);
+
+      ctx.responderRandom = new byte[HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN];
+      hsm.setIncKeyStep2(ctx);
+      ctx.responderEphPubKey = ctx.initiatorEphPubKey;
+      ctx.responderCMAC = new byte[16];
+
+      assertThrows(PKCS11Exception.class, () -> hsm.setIncKeyStep3(ctx));
+      assertEquals(objectCount, backend.getObjectCount());
+
+      assertNotNull(hsm.deriveMfgResetSecret(0x12345678));
+      assertEquals(1, backend.openedSessions.size());
+    }
+  }
+
+  @Test
+  void abandonedKeyAgreementLeavesNoObjects() throws Exception {
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+
+    backend.provisionKeys();
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+      int objectCount = backend.getObjectCount();
+      HardwareSecurityModule.SetIncKeyContext ctx = hsm.setIncKeyStep1(new byte[32]);
+
+      ctx.responderRandom = new byte[HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN];
+      hsm.setIncKeyStep2(ctx);
+      assertEquals(objectCount + 1, backend.getObjectCount());
+
+      hsm.abandonSetIncKey(ctx);
+      assertEquals(objectCount, backend.getObjectCount());
+    }
+  }
+
+  /* The reincarnation key derived for a wrap that fails is destroyed all the same */
+  @Test
+  void failedAppKeyWrapLeavesNoObjects() throws Exception {
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend() {
+      @Override
+      public byte[] C_WrapKey(long hSession, CK_MECHANISM pMechanism, long hWrappingKey,
+                              long hKey, boolean useUtf8)
+          throws PKCS11Exception
+      {
+        throw new PKCS11Exception(PKCS11Constants.CKR_FUNCTION_FAILED);
+      }
+    };
+
+    backend.provisionKeys();
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+      int objectCount = backend.getObjectCount();
+
+      assertThrows(PKCS11Exception.class, () -> hsm.getAppKeyKeyblock(new byte[32]));
+      assertEquals(objectCount, backend.getObjectCount());
+    }
+  }
+
+  /* A stale KLD_AUTH handle failing in step 2 makes step 1 search for the key again */
+  @Test
+  void staleHandleInStep2IsNotReused() throws Exception {
+    int[] searches = new int[1];
+    boolean[] staleHandle = new boolean[1];
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend() {
+      @Override
+      public void C_FindObjectsInit(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+          throws PKCS11Exception
+      {
+        searches[0]++;
+        super.C_FindObjectsInit(hSession, pTemplate, useUtf8);
+      }
+
+      @Override
+      public void C_SignInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+          throws PKCS11Exception
+      {
+        if (staleHandle[0]) {
+          throw new PKCS11Exception(PKCS11Constants.CKR_KEY_HANDLE_INVALID);
+        }
+
+        super.C_SignInit(hSession, pMechanism, hKey, useUtf8);
+      }
+    };
+
+    backend.provisionKeys();
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+      HardwareSecurityModule.SetIncKeyContext ctx = hsm.setIncKeyStep1(new byte[32]);
+      int searchesBefore;
+
+      ctx.responderRandom = new byte[HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN];
+      staleHandle[0] = true;
+      assertThrows(PKCS11Exception.class, () -> hsm.setIncKeyStep2(ctx));
+      hsm.abandonSetIncKey(ctx);
+
+      searchesBefore = searches[0];
+      hsm.setIncKeyStep1(new byte[32]);
+      assertEquals(searchesBefore + 1, searches[0]);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package ly.secore.compute.Provisioning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import ly.secore.compute.DeviceSimulator;
+import ly.secore.compute.HardwareSecurityModule;
+import ly.secore.compute.SoftwareCryptoBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Provisioning of hot-plugged fixtures, with simulated devices whose UARTs are plain files in a
+ * temporary directory.
+ */
+class FleetOrchestratorTest {
+  private static final long RESULT_TIMEOUT_SECONDS = 30;
+
+  @TempDir
+  Path directory;
+
+  private HardwareSecurityModule hsm;
+  private DeviceSimulator.Fleet fleet;
+  private FleetOrchestrator orchestrator;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+    ProvisioningPlan plan = new ProvisioningPlan();
+
+    backend.provisionKeys();
+    hsm = new HardwareSecurityModule(backend, 0, 2);
+    plan.setInitialFirmwareImage(ByteBuffer.wrap(new byte[4096]));
+    fleet = new DeviceSimulator.Fleet();
+    orchestrator = new FleetOrchestrator(hsm, plan, fleet);
+  }
+
+  @AfterEach
+  void tearDown() {
+    hsm.close();
+  }
+
+  @Test
+  void pluggedFixtureIsProvisioned() throws Exception {
+    Path uartPath = directory.resolve("ttyDDM-0");
+    DeviceSimulator simulator = fleet.add(uartPath.toString(), new DeviceSimulator(1));
+    BlockingQueue<StationResult> results = new LinkedBlockingQueue<>();
+
+    try (FleetOrchestrator.HotPlugStations stations =
+             orchestrator.provisionOnHotPlug(directory.resolve("ttyDDM-"), 1, results::add))
+    {
+      StationResult result;
+
+      Files.createFile(uartPath);
+      result = results.poll(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+      assertEquals(uartPath, result.getUartPath());
+      assertTrue(result.isSuccess(), result.toString());
+      assertTrue(simulator.isLocked());
+    }
+  }
+
+  /* A fixture plugged in again while its station still runs does not get a second station */
+  @Test
+  void replugDuringStationStartsNoSecondStation() throws Exception {
+    Path uartPath = directory.resolve("ttyDDM-0");
+    Path otherUartPath = directory.resolve("ttyDDM-1");
+    BlockingQueue<StationResult> results = new LinkedBlockingQueue<>();
+    CountDownLatch release = new CountDownLatch(1);
+
+    fleet.add(uartPath.toString(), new DeviceSimulator(1));
+    fleet.add(otherUartPath.toString(), new DeviceSimulator(2));
+
+    try (FleetOrchestrator.HotPlugStations stations =
+             orchestrator.provisionOnHotPlug(directory.resolve("ttyDDM-"), 2, result -> {
+               results.add(result);
+
+               try {
+                 release.await();
+               }
+               catch (InterruptedException e) {
+                 Thread.currentThread().interrupt();
+               }
+             }))
+    {
+      Files.createFile(uartPath);
+      assertEquals(uartPath, results.poll(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).getUartPath());
+
+      /* The station of the first fixture waits in the consumer, i.e. it is still running */
+      Files.delete(uartPath);
+      Files.createFile(uartPath);
+
+      /* Events arrive in order, so the other fixture shows the replug has been seen */
+      Files.createFile(otherUartPath);
+      assertEquals(otherUartPath,
+                   results.poll(RESULT_TIMEOUT_SECONDS, TimeUnit.SECONDS).getUartPath());
+
+      release.countDown();
+      assertNull(results.poll(100, TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package ly.secore.compute;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/*
+ * Compares the per-call overhead of the interface-proxy and the direct-mapped binding of the
+ * compute-device-proxy library against a connected device.
+ *
+ * Usage: ProxyBindingBenchmark <dev-tty> [iterations]
+ */
+class ProxyBindingBenchmark {
+  public static void main(String args[]) {
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    ComputeDeviceProxyLibrary proxy = ComputeDeviceProxyLibrary.load("proxy");
+    ComputeDeviceProxyLibrary direct = ComputeDeviceProxyLibrary.load("direct");
+    ComputeDeviceProxyLibrary.compute_device_vlog_cb_t vlog =
+        (app_data, priority, fmt, va_args) -> {};
+    Pointer computeDevice = proxy.compute_device_proxy_tty_new(args[0], vlog, null, null);
+
+    if (computeDevice == null) {
+      System.out.println("compute_device_proxy_tty_new() failed.");
+      return;
+    }
+
+    try {
+      if (proxy.compute_device_open_service_session(computeDevice, 1) < 0) {
+        System.out.println("compute_device_open_service_session() failed.");
+        return;
+      }
+
+      /* Warm up both bindings before measuring */
+      run(proxy, computeDevice, iterations / 10 + 1);
+      run(direct, computeDevice, iterations / 10 + 1);
+
+      report("proxy", run(proxy, computeDevice, iterations), iterations);
+      report("direct", run(direct, computeDevice, iterations), iterations);
+
+      proxy.compute_device_close_service_session(computeDevice);
+    }
+    finally {
+      proxy.compute_device_delete(computeDevice);
+    }
+  }
+
+  private static long run(ComputeDeviceProxyLibrary library, Pointer computeDevice, int iterations) {
+    Device.ManufacturingInfo mfgInfo = new Device.ManufacturingInfo();
+    Device.ReincarnationInfo incInfo = new Device.ReincarnationInfo();
+    Device.LifecycleInfo lifecycleInfo = new Device.LifecycleInfo();
+    Memory productKey = new Memory(ComputeDeviceProxyLibrary.DDM_885_PRODUCT_KEY_LEN);
+    IntByReference orderId = new IntByReference();
+    long start = System.nanoTime();
+
+    for (int i = 0; i < iterations; i++) {
+      library.compute_device_get_manufacturing_info(computeDevice, mfgInfo);
+      library.compute_device_get_reincarnation_info(computeDevice, incInfo);
+      library.compute_device_get_885_info(computeDevice, productKey, orderId);
+      library.compute_device_get_lifecycle_info(computeDevice, lifecycleInfo);
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static void report(String binding, long nanos, int iterations) {
+    System.out.format("%-6s: %10.1f us per call (%d calls in %.1f ms)\n",
+                      binding,
+                      nanos / 1e3 / (4.0 * iterations),
+                      4 * iterations,
+                      nanos / 1e6);
+  }
+}
@@ -0,0 +1,79 @@
+package ly.secore.compute;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import ly.secore.compute.Provisioning.FleetOrchestrator;
+import ly.secore.compute.Provisioning.ProvisioningPlan;
+import ly.secore.compute.Provisioning.StationResult;
+
+/*
+ * Provisions a fleet of simulated devices against the software HSM and then updates the
+ * application of every device, to measure the orchestrator and the upload path without hardware.
+ *
+ * Usage: SimulatedFleetBenchmark [devices] [latency-us] [bytes-per-second] [image-size]
+ */
+class SimulatedFleetBenchmark {
+  public static void main(String args[]) {
+    int devices = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    long bytesPerSecond = args.length > 2 ? Long.parseLong(args[2]) : 0;
+    int imageSize = args.length > 3 ? Integer.parseInt(args[3]) : 64 * 1024;
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+    DeviceSimulator.Fleet fleet = new DeviceSimulator.Fleet();
+
+    for (int i = 0; i < devices; i++) {
+      DeviceSimulator simulator = fleet.add("sim-" + i, new DeviceSimulator(1000000 + i));
+
+      simulator.setLatencyMicros(latencyMicros);
+      simulator.setBytesPerSecond(bytesPerSecond);
+    }
+
+    try {
+      backend.provisionKeys();
+
+      try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 8)) {
+        ProvisioningPlan plan = new ProvisioningPlan();
+        List<StationResult> results;
+        byte[] image = new byte[imageSize];
+        long bytes = 0;
+        int failed = 0;
+        long start;
+
+        hsm.startEphemeralKeyPool(4);
+        plan.setInitialFirmwareImage(ByteBuffer.wrap(image));
+
+        start = System.nanoTime();
+        results = new FleetOrchestrator(hsm, plan, fleet).provision(fleet.getPaths());
+
+        for (StationResult result : results) {
+          if (!result.isSuccess()) {
+            System.out.println(result);
+            failed++;
+          }
+        }
+
+        System.out.format("%d devices provisioned, %d failed in %.1f s\n",
+                          devices - failed, failed, (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < devices; i++) {
+          try (Device device = fleet.connect("sim-" + i)) {
+            device.openServiceSession(1);
+            device.applicationUpdate(new ByteArrayInputStream(image));
+            device.closeServiceSession();
+            bytes += device.getLastUploadStatistics().getBytes();
+          }
+        }
+
+        System.out.format("%d application updates, %.0f bytes/s\n",
+                          devices, bytes * 1e9 / (System.nanoTime() - start));
+      }
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace(System.out);
+    }
+  }
+}
@@ -0,0 +1,1181 @@
+/*
+ * ly.secore.compute.SoftwareCryptoBackend
+ * In-process software token for tests and benchmarks of the Hardware Security Module
+ *
+ * Copyright (c) 2025 secore.ly GmbH
+ * All rights reserved.
+ *
+ * This software is the confidential and proprietary information of secore.ly
+ * GmbH ("Confidential Information").  You shall not disclose such Confidential
+ * Information and shall use it only in accordance with the terms of the
+ * license agreement you entered into with secore.ly GmbH or one of its
+ * authorized partners.
+ */
+
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_ECDH1_DERIVE_PARAMS;
+import iaik.pkcs.pkcs11.wrapper.CK_KEY_DERIVATION_STRING_DATA;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.CK_TOKEN_INFO;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPrivateKeySpec;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+ * A token that lives in the Java heap and implements the mechanisms of the provisioning
+ * operations on the JCA: AES key generation, AES-ECB, AES-CMAC, SHA-256, secp256r1 key
+ * generation, ECDH1 with the SHA-384 KDF, ECDSA-SHA256, RSA key generation, key extraction,
+ * AES-ECB key derivation and X9.143 key wrapping (key block version D).  Objects created with
+ * CKA_TOKEN true outlive the sessions and C_Finalize, all other objects are destroyed with the
+ * session that created them.
+ *
+ * The results are what a token would compute, but nothing here is hardened: key material is
+ * kept in plain Java objects.  Use it for tests and benchmarks only.
+ */
+public class SoftwareCryptoBackend implements CryptoBackend {
+  private static final String TOKEN_LABEL = "SOFTWARE";
+  private static final ECParameterSpec SECP256R1 = getSecp256r1();
+
+  private static final class SoftwareObject {
+    final Map<Long, Object> attributes = new HashMap<>();
+    final long hOwnerSession;
+    byte[] value;
+    PrivateKey privateKey;
+    PublicKey publicKey;
+
+    SoftwareObject(long hOwnerSession) {
+      this.hOwnerSession = hOwnerSession;
+    }
+
+    long getLong(long type) {
+      Object value = attributes.get(type);
+
+      return value instanceof Long ? (Long)value : -1;
+    }
+  }
+
+  private static final class Session {
+    long[] foundObjects;
+    int foundObjectsIndex;
+    SoftwareObject encryptKey;
+    long signMechanism;
+    SoftwareObject signKey;
+    ByteArrayOutputStream signData = new ByteArrayOutputStream();
+    SoftwareObject verifyKey;
+    MessageDigest digest;
+  }
+
+  private final Map<Long, SoftwareObject> objects = new ConcurrentHashMap<>();
+  private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong nextHandle = new AtomicLong(1);
+  private final SecureRandom random = new SecureRandom();
+
+  /*
+   * Creates the token keys the provisioning operations look up by label, each with fresh random
+   * key material: MFG_RESET_MASTER, KLD_AUTH, APPLICATION_SIGN and the reincarnation master key.
+   */
+  public void provisionKeys() throws PKCS11Exception {
+    try {
+      KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+      KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+      SoftwareObject object;
+      KeyPair keyPair;
+
+      object = newSecretKey(0, randomBytes(HardwareSecurityModule.AES_256_KEY_LEN));
+      object.attributes.put(PKCS11Constants.CKA_LABEL, HSMTemplates.LABEL_MFG_RESET_MASTER);
+      addObject(object);
+
+      object = newSecretKey(0, randomBytes(HardwareSecurityModule.AES_256_KEY_LEN));
+      object.attributes.put(PKCS11Constants.CKA_LABEL,
+                            new String(HSMTemplates.LABEL_REINCARNATION_MASTER));
+      addObject(object);
+
+      ecGenerator.initialize(SECP256R1, random);
+      keyPair = ecGenerator.generateKeyPair();
+      object = newPrivateKey(0, PKCS11Constants.CKK_EC, keyPair);
+      object.attributes.put(PKCS11Constants.CKA_LABEL, HSMTemplates.LABEL_KLD_AUTH);
+      addObject(object);
+
+      rsaGenerator.initialize(2048, random);
+      keyPair = rsaGenerator.generateKeyPair();
+      object = newPrivateKey(0, PKCS11Constants.CKK_RSA, keyPair);
+      object.attributes.put(PKCS11Constants.CKA_LABEL,
+                            new String(HSMTemplates.LABEL_APPLICATION_SIGN));
+      addObject(object);
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  /* The number of objects on the token, session objects included, e.g. to check for leaks */
+  public int getObjectCount() {
+    return objects.size();
+  }
+
+  @Override
+  public void C_Initialize(Object pInitArgs, boolean useUtf8) {
+  }
+
+  @Override
+  public void C_Finalize(Object pReserved) throws PKCS11Exception {
+    for (long hSession : sessions.keySet()) {
+      C_CloseSession(hSession);
+    }
+  }
+
+  @Override
+  public CK_TOKEN_INFO C_GetTokenInfo(long slotID) {
+    CK_TOKEN_INFO tokenInfo = new CK_TOKEN_INFO();
+
+    tokenInfo.label = String.format("%-32s", TOKEN_LABEL).toCharArray();
+    tokenInfo.serialNumber = String.format("%-16s", Long.toHexString(slotID)).toCharArray();
+    tokenInfo.ulMaxSessionCount = PKCS11Constants.CK_EFFECTIVELY_INFINITE;
+    tokenInfo.ulSessionCount = sessions.size();
+    tokenInfo.ulMaxRwSessionCount = PKCS11Constants.CK_EFFECTIVELY_INFINITE;
+
+    return tokenInfo;
+  }
+
+  @Override
+  public long C_OpenSession(long slotID, long flags, Object pApplication, Object Notify) {
+    long hSession = nextHandle.getAndIncrement();
+
+    sessions.put(hSession, new Session());
+
+    return hSession;
+  }
+
+  @Override
+  public void C_CloseSession(long hSession) throws PKCS11Exception {
+    getSession(hSession);
+    sessions.remove(hSession);
+    objects.values().removeIf(object -> object.hOwnerSession == hSession);
+  }
+
+  @Override
+  public void C_FindObjectsInit(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    Session session = getSession(hSession);
+
+    session.foundObjects = objects.entrySet().stream()
+        .filter(entry -> matches(entry.getValue(), pTemplate))
+        .mapToLong(Map.Entry::getKey)
+        .sorted()
+        .toArray();
+    session.foundObjectsIndex = 0;
+  }
+
+  @Override
+  public long[] C_FindObjects(long hSession, long ulMaxObjectCount) throws PKCS11Exception {
+    Session session = getSession(hSession);
+    int start;
+    int end;
+
+    if (session.foundObjects == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    start = session.foundObjectsIndex;
+    end = (int)Math.min(session.foundObjects.length, start + ulMaxObjectCount);
+    session.foundObjectsIndex = end;
+
+    return Arrays.copyOfRange(session.foundObjects, start, end);
+  }
+
+  @Override
+  public void C_FindObjectsFinal(long hSession) throws PKCS11Exception {
+    getSession(hSession).foundObjects = null;
+  }
+
+  @Override
+  public long C_CreateObject(long hSession, CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject object = new SoftwareObject(getOwnerSession(hSession, pTemplate));
+
+    putAttributes(object, pTemplate);
+
+    try {
+      materializeKey(object);
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+
+    return addObject(object);
+  }
+
+  @Override
+  public void C_DestroyObject(long hSession, long hObject) throws PKCS11Exception {
+    getSession(hSession);
+
+    if (objects.remove(hObject) == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OBJECT_HANDLE_INVALID);
+    }
+  }
+
+  @Override
+  public void C_GetAttributeValue(long hSession, long hObject, CK_ATTRIBUTE[] pTemplate,
+                                  boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject object;
+
+    getSession(hSession);
+    object = objects.get(hObject);
+
+    if (object == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OBJECT_HANDLE_INVALID);
+    }
+
+    for (CK_ATTRIBUTE attribute : pTemplate) {
+      attribute.pValue = getAttribute(object, attribute.type);
+    }
+  }
+
+  @Override
+  public void C_EncryptInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    requireMechanism(pMechanism, PKCS11Constants.CKM_AES_ECB);
+    getSession(hSession).encryptKey = getSecretKey(hKey);
+  }
+
+  @Override
+  public byte[] C_Encrypt(long hSession, Object pParameter, byte[] pData) throws PKCS11Exception {
+    Session session = getSession(hSession);
+    SoftwareObject key = session.encryptKey;
+
+    if (key == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    session.encryptKey = null;
+
+    if (pData.length % HardwareSecurityModule.AES_BLOCK_LEN != 0) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_DATA_LEN_RANGE);
+    }
+
+    try {
+      return aesEcb(key.value, pData);
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public void C_DigestInit(long hSession, CK_MECHANISM pMechanism, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    Session session = getSession(hSession);
+
+    requireMechanism(pMechanism, PKCS11Constants.CKM_SHA256);
+
+    try {
+      session.digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public void C_DigestUpdate(long hSession, byte[] pPart) throws PKCS11Exception {
+    getDigest(hSession).update(pPart);
+  }
+
+  @Override
+  public byte[] C_DigestFinal(long hSession) throws PKCS11Exception {
+    byte[] digest = getDigest(hSession).digest();
+
+    getSession(hSession).digest = null;
+
+    return digest;
+  }
+
+  @Override
+  public void C_SignInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    Session session = getSession(hSession);
+
+    if (pMechanism.mechanism == PKCS11Constants.CKM_AES_CMAC) {
+      session.signKey = getSecretKey(hKey);
+    }
+    else if (pMechanism.mechanism == PKCS11Constants.CKM_ECDSA_SHA256) {
+      session.signKey = getObject(hKey);
+
+      if (session.signKey.privateKey == null ||
+          session.signKey.getLong(PKCS11Constants.CKA_KEY_TYPE) != PKCS11Constants.CKK_EC)
+      {
+        session.signKey = null;
+        throw new PKCS11Exception(PKCS11Constants.CKR_KEY_TYPE_INCONSISTENT);
+      }
+    }
+    else {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_INVALID);
+    }
+
+    session.signMechanism = pMechanism.mechanism;
+    session.signData.reset();
+  }
+
+  @Override
+  public byte[] C_Sign(long hSession, byte[] pData) throws PKCS11Exception {
+    Session session = getSession(hSession);
+    SoftwareObject key = session.signKey;
+
+    if (key == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    session.signKey = null;
+
+    try {
+      if (session.signMechanism == PKCS11Constants.CKM_AES_CMAC) {
+        return aesCmac(key.value, pData);
+      }
+      else {
+        Signature ecdsa = Signature.getInstance("SHA256withECDSAinP1363Format");
+
+        ecdsa.initSign(key.privateKey, random);
+        ecdsa.update(pData);
+
+        return ecdsa.sign();
+      }
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public void C_SignUpdate(long hSession, byte[] pPart) throws PKCS11Exception {
+    Session session = getSession(hSession);
+
+    if (session.signKey == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    session.signData.writeBytes(pPart);
+  }
+
+  @Override
+  public byte[] C_SignFinal(long hSession) throws PKCS11Exception {
+    Session session = getSession(hSession);
+    byte[] data = session.signData.toByteArray();
+
+    session.signData.reset();
+
+    return C_Sign(hSession, data);
+  }
+
+  @Override
+  public void C_VerifyInit(long hSession, CK_MECHANISM pMechanism, long hKey, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    requireMechanism(pMechanism, PKCS11Constants.CKM_AES_CMAC);
+    getSession(hSession).verifyKey = getSecretKey(hKey);
+  }
+
+  @Override
+  public void C_Verify(long hSession, byte[] pData, byte[] pSignature) throws PKCS11Exception {
+    Session session = getSession(hSession);
+    SoftwareObject key = session.verifyKey;
+
+    if (key == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    session.verifyKey = null;
+
+    try {
+      if (!MessageDigest.isEqual(aesCmac(key.value, pData), pSignature)) {
+        throw new PKCS11Exception(PKCS11Constants.CKR_SIGNATURE_INVALID);
+      }
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public long C_GenerateKey(long hSession, CK_MECHANISM pMechanism, CK_ATTRIBUTE[] pTemplate,
+                            boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject object = new SoftwareObject(getOwnerSession(hSession, pTemplate));
+    long valueLen;
+
+    requireMechanism(pMechanism, PKCS11Constants.CKM_AES_KEY_GEN);
+    putAttributes(object, pTemplate);
+    valueLen = object.getLong(PKCS11Constants.CKA_VALUE_LEN);
+
+    if (valueLen != 16 && valueLen != 24 && valueLen != 32) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_TEMPLATE_INCONSISTENT);
+    }
+
+    object.attributes.put(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY);
+    object.attributes.put(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES);
+    object.value = randomBytes((int)valueLen);
+
+    return addObject(object);
+  }
+
+  @Override
+  public long[] C_GenerateKeyPair(long hSession, CK_MECHANISM pMechanism,
+                                  CK_ATTRIBUTE[] pPublicKeyTemplate,
+                                  CK_ATTRIBUTE[] pPrivateKeyTemplate,
+                                  boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject publicKey = new SoftwareObject(getOwnerSession(hSession, pPublicKeyTemplate));
+    SoftwareObject privateKey = new SoftwareObject(getOwnerSession(hSession, pPrivateKeyTemplate));
+    KeyPairGenerator generator;
+    KeyPair keyPair;
+    long keyType;
+
+    putAttributes(publicKey, pPublicKeyTemplate);
+    putAttributes(privateKey, pPrivateKeyTemplate);
+
+    try {
+      if (pMechanism.mechanism == PKCS11Constants.CKM_EC_KEY_PAIR_GEN) {
+        if (!Arrays.equals((byte[])publicKey.attributes.get(PKCS11Constants.CKA_EC_PARAMS),
+                           HardwareSecurityModule.OID_SECP256R1))
+        {
+          throw new PKCS11Exception(PKCS11Constants.CKR_CURVE_NOT_SUPPORTED);
+        }
+
+        keyType = PKCS11Constants.CKK_EC;
+        generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(SECP256R1, random);
+      }
+      else if (pMechanism.mechanism == PKCS11Constants.CKM_RSA_PKCS_KEY_PAIR_GEN) {
+        Object publicExponent = publicKey.attributes.get(PKCS11Constants.CKA_PUBLIC_EXPONENT);
+
+        keyType = PKCS11Constants.CKK_RSA;
+        generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(
+            new RSAKeyGenParameterSpec((int)publicKey.getLong(PKCS11Constants.CKA_MODULUS_BITS),
+                                       publicExponent instanceof byte[] ?
+                                           new BigInteger(1, (byte[])publicExponent) :
+                                           RSAKeyGenParameterSpec.F4),
+            random);
+      }
+      else {
+        throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_INVALID);
+      }
+
+      keyPair = generator.generateKeyPair();
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+
+    publicKey.attributes.put(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PUBLIC_KEY);
+    publicKey.attributes.put(PKCS11Constants.CKA_KEY_TYPE, keyType);
+    publicKey.publicKey = keyPair.getPublic();
+
+    privateKey.attributes.put(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY);
+    privateKey.attributes.put(PKCS11Constants.CKA_KEY_TYPE, keyType);
+    privateKey.privateKey = keyPair.getPrivate();
+    privateKey.publicKey = keyPair.getPublic();
+
+    return new long[] { addObject(publicKey), addObject(privateKey) };
+  }
+
+  @Override
+  public byte[] C_WrapKey(long hSession, CK_MECHANISM pMechanism, long hWrappingKey, long hKey,
+                          boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject wrappingKey = getSecretKey(hWrappingKey);
+    SoftwareObject key = getObject(hKey);
+    byte[] keyValue;
+
+    getSession(hSession);
+    requireMechanism(pMechanism, HardwareSecurityModule.CKM_X9_143_KEY_WRAP);
+
+    if (!(pMechanism.pParameter instanceof char[])) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_PARAM_INVALID);
+    }
+
+    if (key.value != null) {
+      keyValue = key.value;
+    }
+    else if (key.privateKey != null) {
+      keyValue = key.privateKey.getEncoded();
+    }
+    else {
+      keyValue = key.publicKey.getEncoded();
+    }
+
+    try {
+      return wrapKeyBlock((char[])pMechanism.pParameter, wrappingKey.value, keyValue);
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public long C_DeriveKey(long hSession, CK_MECHANISM pMechanism, long hBaseKey,
+                          CK_ATTRIBUTE[] pTemplate, boolean useUtf8)
+      throws PKCS11Exception
+  {
+    SoftwareObject baseKey = getObject(hBaseKey);
+    SoftwareObject object = new SoftwareObject(getOwnerSession(hSession, pTemplate));
+    long valueLen;
+
+    putAttributes(object, pTemplate);
+    valueLen = object.getLong(PKCS11Constants.CKA_VALUE_LEN);
+
+    try {
+      if (pMechanism.mechanism == PKCS11Constants.CKM_ECDH1_DERIVE) {
+        object.value = deriveEcdh(baseKey, (CK_ECDH1_DERIVE_PARAMS)pMechanism.pParameter, valueLen);
+      }
+      else if (pMechanism.mechanism == PKCS11Constants.CKM_EXTRACT_KEY_FROM_KEY) {
+        long bitOffset = (Long)pMechanism.pParameter;
+
+        if (bitOffset % 8 != 0 || baseKey.value == null ||
+            bitOffset / 8 + valueLen > baseKey.value.length)
+        {
+          throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_PARAM_INVALID);
+        }
+
+        object.value = Arrays.copyOfRange(baseKey.value,
+                                          (int)(bitOffset / 8),
+                                          (int)(bitOffset / 8 + valueLen));
+      }
+      else if (pMechanism.mechanism == PKCS11Constants.CKM_AES_ECB_ENCRYPT_DATA) {
+        byte[] data = ((CK_KEY_DERIVATION_STRING_DATA)pMechanism.pParameter).pData;
+
+        object.value = aesEcb(getSecretKey(hBaseKey).value, data);
+
+        if (valueLen > 0) {
+          object.value = Arrays.copyOf(object.value, (int)valueLen);
+        }
+      }
+      else {
+        throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_INVALID);
+      }
+    }
+    catch (ClassCastException | NullPointerException e) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_PARAM_INVALID);
+    }
+    catch (GeneralSecurityException e) {
+      throw failed(e);
+    }
+
+    object.attributes.putIfAbsent(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY);
+    object.attributes.put(PKCS11Constants.CKA_VALUE_LEN, (long)object.value.length);
+
+    return addObject(object);
+  }
+
+  @Override
+  public void C_GenerateRandom(long hSession, byte[] randomData) throws PKCS11Exception {
+    getSession(hSession);
+    random.nextBytes(randomData);
+  }
+
+  private Session getSession(long hSession) throws PKCS11Exception {
+    Session session = sessions.get(hSession);
+
+    if (session == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_SESSION_HANDLE_INVALID);
+    }
+
+    return session;
+  }
+
+  private MessageDigest getDigest(long hSession) throws PKCS11Exception {
+    MessageDigest digest = getSession(hSession).digest;
+
+    if (digest == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_OPERATION_NOT_INITIALIZED);
+    }
+
+    return digest;
+  }
+
+  private SoftwareObject getObject(long hObject) throws PKCS11Exception {
+    SoftwareObject object = objects.get(hObject);
+
+    if (object == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_KEY_HANDLE_INVALID);
+    }
+
+    return object;
+  }
+
+  private SoftwareObject getSecretKey(long hKey) throws PKCS11Exception {
+    SoftwareObject key = getObject(hKey);
+
+    if (key.value == null) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_KEY_TYPE_INCONSISTENT);
+    }
+
+    return key;
+  }
+
+  private long getOwnerSession(long hSession, CK_ATTRIBUTE[] pTemplate) throws PKCS11Exception {
+    getSession(hSession);
+
+    for (CK_ATTRIBUTE attribute : pTemplate) {
+      if (attribute.type == PKCS11Constants.CKA_TOKEN && Boolean.TRUE.equals(attribute.pValue)) {
+        return 0;
+      }
+    }
+
+    return hSession;
+  }
+
+  private long addObject(SoftwareObject object) {
+    long hObject = nextHandle.getAndIncrement();
+
+    objects.put(hObject, object);
+
+    return hObject;
+  }
+
+  private SoftwareObject newSecretKey(long hOwnerSession, byte[] value) {
+    SoftwareObject object = new SoftwareObject(hOwnerSession);
+
+    object.attributes.put(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY);
+    object.attributes.put(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES);
+    object.attributes.put(PKCS11Constants.CKA_VALUE_LEN, (long)value.length);
+    object.value = value;
+
+    return object;
+  }
+
+  private SoftwareObject newPrivateKey(long hOwnerSession, long keyType, KeyPair keyPair) {
+    SoftwareObject object = new SoftwareObject(hOwnerSession);
+
+    object.attributes.put(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_PRIVATE_KEY);
+    object.attributes.put(PKCS11Constants.CKA_KEY_TYPE, keyType);
+    object.privateKey = keyPair.getPrivate();
+    object.publicKey = keyPair.getPublic();
+
+    return object;
+  }
+
+  private byte[] randomBytes(int len) {
+    byte[] bytes = new byte[len];
+
+    random.nextBytes(bytes);
+
+    return bytes;
+  }
+
+  /* Labels are compared as strings, whether they are passed as String or char[] */
+  private static Object normalize(Object pValue) {
+    if (pValue instanceof char[]) {
+      return new String((char[])pValue);
+    }
+
+    if (pValue instanceof Integer) {
+      return ((Integer)pValue).longValue();
+    }
+
+    if (pValue instanceof byte[]) {
+      return ((byte[])pValue).clone();
+    }
+
+    return pValue;
+  }
+
+  private static void putAttributes(SoftwareObject object, CK_ATTRIBUTE[] pTemplate) {
+    for (CK_ATTRIBUTE attribute : pTemplate) {
+      object.attributes.put(attribute.type, normalize(attribute.pValue));
+    }
+  }
+
+  private static boolean matches(SoftwareObject object, CK_ATTRIBUTE[] pTemplate) {
+    for (CK_ATTRIBUTE attribute : pTemplate) {
+      Object expected = normalize(attribute.pValue);
+      Object actual = object.attributes.get(attribute.type);
+
+      if (expected instanceof byte[] && actual instanceof byte[]) {
+        if (!Arrays.equals((byte[])expected, (byte[])actual)) {
+          return false;
+        }
+      }
+      else if (!Objects.equals(expected, actual)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /* Builds the key of a C_CreateObject template from its key value attributes */
+  private static void materializeKey(SoftwareObject object)
+      throws GeneralSecurityException, PKCS11Exception
+  {
+    long objectClass = object.getLong(PKCS11Constants.CKA_CLASS);
+    long keyType = object.getLong(PKCS11Constants.CKA_KEY_TYPE);
+    Map<Long, Object> attributes = object.attributes;
+
+    if (objectClass == PKCS11Constants.CKO_SECRET_KEY) {
+      object.value = (byte[])attributes.remove(PKCS11Constants.CKA_VALUE);
+
+      if (object.value == null) {
+        throw new PKCS11Exception(PKCS11Constants.CKR_TEMPLATE_INCOMPLETE);
+      }
+
+      attributes.put(PKCS11Constants.CKA_VALUE_LEN, (long)object.value.length);
+    }
+    else if (objectClass == PKCS11Constants.CKO_PRIVATE_KEY && keyType == PKCS11Constants.CKK_EC) {
+      object.privateKey = KeyFactory.getInstance("EC").generatePrivate(
+          new ECPrivateKeySpec(getBigInteger(attributes, PKCS11Constants.CKA_VALUE), SECP256R1));
+      attributes.remove(PKCS11Constants.CKA_VALUE);
+    }
+    else if (objectClass == PKCS11Constants.CKO_PRIVATE_KEY && keyType == PKCS11Constants.CKK_RSA) {
+      KeyFactory rsa = KeyFactory.getInstance("RSA");
+      BigInteger modulus = getBigInteger(attributes, PKCS11Constants.CKA_MODULUS);
+      BigInteger publicExponent = getBigInteger(attributes, PKCS11Constants.CKA_PUBLIC_EXPONENT);
+
+      object.privateKey = rsa.generatePrivate(new RSAPrivateCrtKeySpec(
+          modulus,
+          publicExponent,
+          getBigInteger(attributes, PKCS11Constants.CKA_PRIVATE_EXPONENT),
+          getBigInteger(attributes, PKCS11Constants.CKA_PRIME_1),
+          getBigInteger(attributes, PKCS11Constants.CKA_PRIME_2),
+          getBigInteger(attributes, PKCS11Constants.CKA_EXPONENT_1),
+          getBigInteger(attributes, PKCS11Constants.CKA_EXPONENT_2),
+          getBigInteger(attributes, PKCS11Constants.CKA_COEFFICIENT)));
+      object.publicKey = rsa.generatePublic(new RSAPublicKeySpec(modulus, publicExponent));
+    }
+    else if (objectClass == PKCS11Constants.CKO_PUBLIC_KEY && keyType == PKCS11Constants.CKK_EC) {
+      object.publicKey =
+          decodeECPoint((byte[])attributes.remove(PKCS11Constants.CKA_EC_POINT));
+    }
+    else if (objectClass == PKCS11Constants.CKO_PUBLIC_KEY && keyType == PKCS11Constants.CKK_RSA) {
+      object.publicKey = KeyFactory.getInstance("RSA").generatePublic(
+          new RSAPublicKeySpec(getBigInteger(attributes, PKCS11Constants.CKA_MODULUS),
+                               getBigInteger(attributes, PKCS11Constants.CKA_PUBLIC_EXPONENT)));
+    }
+    else {
+      throw new PKCS11Exception(PKCS11Constants.CKR_TEMPLATE_INCONSISTENT);
+    }
+  }
+
+  private static BigInteger getBigInteger(Map<Long, Object> attributes, long type)
+      throws PKCS11Exception
+  {
+    Object value = attributes.get(type);
+
+    if (!(value instanceof byte[])) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_TEMPLATE_INCOMPLETE);
+    }
+
+    return new BigInteger(1, (byte[])value);
+  }
+
+  private static Object getAttribute(SoftwareObject object, long type) throws PKCS11Exception {
+    Object value;
+
+    if (type == PKCS11Constants.CKA_EC_POINT && object.publicKey instanceof ECPublicKey &&
+        object.privateKey == null)
+    {
+      /* DER OCTET STRING around the uncompressed point */
+      byte[] point = encodeECPoint((ECPublicKey)object.publicKey);
+      byte[] ecPoint = new byte[point.length + 2];
+
+      ecPoint[0] = 0x04;
+      ecPoint[1] = (byte)point.length;
+      System.arraycopy(point, 0, ecPoint, 2, point.length);
+
+      return ecPoint;
+    }
+
+    if (type == PKCS11Constants.CKA_PUBLIC_KEY_INFO && object.publicKey != null) {
+      return object.publicKey.getEncoded();
+    }
+
+    if (object.publicKey instanceof RSAPublicKey) {
+      if (type == PKCS11Constants.CKA_MODULUS) {
+        return ((RSAPublicKey)object.publicKey).getModulus().toByteArray();
+      }
+
+      if (type == PKCS11Constants.CKA_PUBLIC_EXPONENT) {
+        return ((RSAPublicKey)object.publicKey).getPublicExponent().toByteArray();
+      }
+    }
+
+    if (type == PKCS11Constants.CKA_VALUE && object.value != null) {
+      return object.value.clone();
+    }
+
+    if (type == PKCS11Constants.CKA_CHECK_VALUE && object.value != null) {
+      /* The first three bytes of the encryption of a zero block, as for AES keys on a token */
+      try {
+        return Arrays.copyOf(aesEcb(object.value, new byte[HardwareSecurityModule.AES_BLOCK_LEN]),
+                             3);
+      }
+      catch (GeneralSecurityException e) {
+        throw failed(e);
+      }
+    }
+
+    if (!object.attributes.containsKey(type)) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_ATTRIBUTE_TYPE_INVALID);
+    }
+
+    value = object.attributes.get(type);
+
+    if (value instanceof String) {
+      return ((String)value).toCharArray();
+    }
+
+    if (value instanceof byte[]) {
+      return ((byte[])value).clone();
+    }
+
+    return value;
+  }
+
+  private static void requireMechanism(CK_MECHANISM pMechanism, long mechanism)
+      throws PKCS11Exception
+  {
+    if (pMechanism.mechanism != mechanism) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_INVALID);
+    }
+  }
+
+  private static PKCS11Exception failed(GeneralSecurityException e) {
+    PKCS11Exception pkcs11Exception = new PKCS11Exception(PKCS11Constants.CKR_FUNCTION_FAILED);
+
+    pkcs11Exception.initCause(e);
+
+    return pkcs11Exception;
+  }
+
+  private static ECParameterSpec getSecp256r1() {
+    try {
+      AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+
+      parameters.init(new ECGenParameterSpec("secp256r1"));
+
+      return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+    catch (GeneralSecurityException e) {
+      throw new IllegalStateException("secp256r1 not supported by the JCA.", e);
+    }
+  }
+
+  static byte[] encodeECPoint(ECPublicKey publicKey) {
+    byte[] point = new byte[65];
+
+    point[0] = 0x04;
+    toUnsigned(publicKey.getW().getAffineX(), point, 1, 32);
+    toUnsigned(publicKey.getW().getAffineY(), point, 33, 32);
+
+    return point;
+  }
+
+  /* Accepts the uncompressed point, bare or as DER OCTET STRING */
+  static PublicKey decodeECPoint(byte[] point)
+      throws GeneralSecurityException, PKCS11Exception
+  {
+    if (point != null && point.length == 67 && point[0] == 0x04 && point[1] == 65) {
+      point = Arrays.copyOfRange(point, 2, point.length);
+    }
+
+    if (point == null || point.length != 65 || point[0] != 0x04) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_ATTRIBUTE_VALUE_INVALID);
+    }
+
+    return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(
+        new ECPoint(new BigInteger(1, Arrays.copyOfRange(point, 1, 33)),
+                    new BigInteger(1, Arrays.copyOfRange(point, 33, 65))),
+        SECP256R1));
+  }
+
+  private static void toUnsigned(BigInteger value, byte[] dst, int offset, int len) {
+    byte[] bytes = value.toByteArray();
+    int copy = Math.min(bytes.length, len);
+
+    System.arraycopy(bytes, bytes.length - copy, dst, offset + len - copy, copy);
+  }
+
+  private byte[] deriveEcdh(SoftwareObject baseKey, CK_ECDH1_DERIVE_PARAMS params, long valueLen)
+      throws GeneralSecurityException, PKCS11Exception
+  {
+    KeyAgreement ecdh = KeyAgreement.getInstance("ECDH");
+    byte[] sharedSecret;
+
+    if (baseKey.privateKey == null || valueLen <= 0) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_TEMPLATE_INCONSISTENT);
+    }
+
+    ecdh.init(baseKey.privateKey);
+    ecdh.doPhase(decodeECPoint(params.pPublicData), true);
+    sharedSecret = ecdh.generateSecret();
+
+    if (params.kdf == PKCS11Constants.CKD_NULL) {
+      return Arrays.copyOf(sharedSecret, (int)valueLen);
+    }
+
+    if (params.kdf != PKCS11Constants.CKD_SHA384_KDF) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_PARAM_INVALID);
+    }
+
+    return x963Kdf(sharedSecret, params.pSharedData, (int)valueLen);
+  }
+
+  /* ANSI X9.63 KDF with SHA-384 */
+  static byte[] x963Kdf(byte[] sharedSecret, byte[] sharedData, int len)
+      throws GeneralSecurityException
+  {
+    MessageDigest sha384 = MessageDigest.getInstance("SHA-384");
+    byte[] derived = new byte[len];
+
+    for (int counter = 1, offset = 0; offset < derived.length; counter++) {
+      byte[] block;
+
+      sha384.update(sharedSecret);
+      sha384.update(new byte[] {
+        (byte)(counter >> 24), (byte)(counter >> 16), (byte)(counter >> 8), (byte)counter
+      });
+
+      if (sharedData != null) {
+        sha384.update(sharedData);
+      }
+
+      block = sha384.digest();
+      System.arraycopy(block, 0, derived, offset, Math.min(block.length, derived.length - offset));
+      offset += block.length;
+    }
+
+    return derived;
+  }
+
+  private static byte[] aesEcb(byte[] key, byte[] data) throws GeneralSecurityException {
+    Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+
+    aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+
+    return aes.doFinal(data);
+  }
+
+  /* AES-CMAC as of RFC 4493 */
+  static byte[] aesCmac(byte[] key, byte[] data) throws GeneralSecurityException {
+    Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+    int blockLen = HardwareSecurityModule.AES_BLOCK_LEN;
+    int blocks = Math.max(1, (data.length + blockLen - 1) / blockLen);
+    boolean complete = data.length > 0 && data.length % blockLen == 0;
+    byte[] lastBlock = new byte[blockLen];
+    byte[] subkey;
+    byte[] x = new byte[blockLen];
+
+    aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+    subkey = doubleBlock(aes.doFinal(new byte[blockLen]));
+
+    if (!complete) {
+      subkey = doubleBlock(subkey);
+    }
+
+    for (int i = 0; i < blocks - 1; i++) {
+      for (int j = 0; j < blockLen; j++) {
+        x[j] ^= data[i * blockLen + j];
+      }
+
+      x = aes.doFinal(x);
+    }
+
+    System.arraycopy(data, (blocks - 1) * blockLen, lastBlock, 0,
+                     data.length - (blocks - 1) * blockLen);
+
+    if (!complete) {
+      lastBlock[data.length - (blocks - 1) * blockLen] = (byte)0x80;
+    }
+
+    for (int j = 0; j < blockLen; j++) {
+      x[j] ^= lastBlock[j] ^ subkey[j];
+    }
+
+    return aes.doFinal(x);
+  }
+
+  private static byte[] doubleBlock(byte[] block) {
+    byte[] doubled = new byte[block.length];
+
+    for (int i = 0; i < block.length; i++) {
+      doubled[i] = (byte)(block[i] << 1);
+
+      if (i + 1 < block.length && (block[i + 1] & 0x80) != 0) {
+        doubled[i] |= 1;
+      }
+    }
+
+    if ((block[0] & 0x80) != 0) {
+      doubled[block.length - 1] ^= (byte)0x87;
+    }
+
+    return doubled;
+  }
+
+  /*
+   * Key block version D of ANSI X9.143: the header, the encrypted key data and the MAC, the
+   * latter two hex encoded.  The key data is the 16 bit key length in bits, the key and random
+   * padding to the AES block size.  Encryption and authentication keys are derived from the key
+   * block protection key with the CMAC based KDF of the standard, the MAC over header and clear
+   * key data serves as IV of the CBC encryption.  The length field of the header is filled in.
+   */
+  private byte[] wrapKeyBlock(char[] header, byte[] kbpk, byte[] key)
+      throws GeneralSecurityException, PKCS11Exception
+  {
+    int blockLen = HardwareSecurityModule.AES_BLOCK_LEN;
+    byte[] headerBytes = new String(header).getBytes(StandardCharsets.US_ASCII);
+    byte[] keyData = new byte[(2 + key.length + blockLen - 1) / blockLen * blockLen];
+    byte[] authenticatedData = new byte[headerBytes.length + keyData.length];
+    Cipher aesCbc = Cipher.getInstance("AES/CBC/NoPadding");
+    int keyBlockLen = headerBytes.length + 2 * keyData.length + 2 * blockLen;
+    byte[] mac;
+    byte[] encryptedKeyData;
+
+    if (headerBytes.length < 16 || headerBytes[0] != 'D' || keyBlockLen > 9999) {
+      throw new PKCS11Exception(PKCS11Constants.CKR_MECHANISM_PARAM_INVALID);
+    }
+
+    System.arraycopy(String.format("%04d", keyBlockLen).getBytes(StandardCharsets.US_ASCII), 0,
+                     headerBytes, 1, 4);
+
+    keyData[0] = (byte)(key.length * 8 >> 8);
+    keyData[1] = (byte)(key.length * 8);
+    System.arraycopy(key, 0, keyData, 2, key.length);
+    System.arraycopy(randomBytes(keyData.length - 2 - key.length), 0,
+                     keyData, 2 + key.length, keyData.length - 2 - key.length);
+
+    System.arraycopy(headerBytes, 0, authenticatedData, 0, headerBytes.length);
+    System.arraycopy(keyData, 0, authenticatedData, headerBytes.length, keyData.length);
+    mac = aesCmac(deriveKeyBlockKey(kbpk, 0x0001), authenticatedData);
+
+    aesCbc.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(deriveKeyBlockKey(kbpk, 0x0000), "AES"),
+                new IvParameterSpec(mac));
+    encryptedKeyData = aesCbc.doFinal(keyData);
+
+    return (new String(headerBytes, StandardCharsets.US_ASCII) +
+            HexFormat.of().withUpperCase().formatHex(encryptedKeyData) +
+            HexFormat.of().withUpperCase().formatHex(mac)).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /*
+   * Reverses wrapKeyBlock: decrypts the key data of a version D key block and checks its MAC.
+   * Returns the key, or null if the key block is malformed or does not authenticate under kbpk.
+   */
+  static byte[] unwrapKeyBlock(byte[] keyBlock, byte[] kbpk) throws GeneralSecurityException {
+    int blockLen = HardwareSecurityModule.AES_BLOCK_LEN;
+    String text = new String(keyBlock, StandardCharsets.US_ASCII);
+    int headerLen = 16;
+    Cipher aesCbc = Cipher.getInstance("AES/CBC/NoPadding");
+    byte[] encryptedKeyData;
+    byte[] keyData;
+    byte[] mac;
+    byte[] authenticatedData;
+    int keyLen;
+
+    if (text.length() < headerLen + 4 * blockLen || text.charAt(0) != 'D' ||
+        (text.length() - headerLen) % (2 * blockLen) != 0 ||
+        !text.substring(1, 5).equals(String.format("%04d", text.length())))
+    {
+      return null;
+    }
+
+    try {
+      encryptedKeyData = HexFormat.of().parseHex(text, headerLen, text.length() - 2 * blockLen);
+      mac = HexFormat.of().parseHex(text, text.length() - 2 * blockLen, text.length());
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+
+    aesCbc.init(Cipher.DECRYPT_MODE,
+                new SecretKeySpec(deriveKeyBlockKey(kbpk, 0x0000), "AES"),
+                new IvParameterSpec(mac));
+    keyData = aesCbc.doFinal(encryptedKeyData);
+
+    authenticatedData = new byte[headerLen + keyData.length];
+    System.arraycopy(keyBlock, 0, authenticatedData, 0, headerLen);
+    System.arraycopy(keyData, 0, authenticatedData, headerLen, keyData.length);
+
+    if (!MessageDigest.isEqual(mac, aesCmac(deriveKeyBlockKey(kbpk, 0x0001), authenticatedData))) {
+      return null;
+    }
+
+    keyLen = ((keyData[0] & 0xFF) << 8 | (keyData[1] & 0xFF)) / 8;
+
+    if (keyLen > keyData.length - 2) {
+      return null;
+    }
+
+    return Arrays.copyOfRange(keyData, 2, 2 + keyLen);
+  }
+
+  /* Key usage 0x0000 derives the encryption key, 0x0001 the authentication key */
+  private static byte[] deriveKeyBlockKey(byte[] kbpk, int keyUsage)
+      throws GeneralSecurityException
+  {
+    int algorithm = kbpk.length == 16 ? 0x0002 : kbpk.length == 24 ? 0x0003 : 0x0004;
+    int lengthInBits = kbpk.length * 8;
+    byte[] derivedKey = new byte[kbpk.length];
+
+    for (int counter = 1, offset = 0; offset < derivedKey.length; counter++) {
+      byte[] block = aesCmac(kbpk, new byte[] {
+        (byte)counter,
+        (byte)(keyUsage >> 8), (byte)keyUsage,
+        0x00,
+        (byte)(algorithm >> 8), (byte)algorithm,
+        (byte)(lengthInBits >> 8), (byte)lengthInBits
+      });
+
+      System.arraycopy(block, 0, derivedKey, offset, Math.min(block.length,
+                                                              derivedKey.length - offset));
+      offset += block.length;
+    }
+
+    return derivedKey;
+  }
+}
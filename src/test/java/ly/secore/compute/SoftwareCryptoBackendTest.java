@@ -0,0 +1,127 @@
+package ly.secore.compute;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import org.junit.jupiter.api.Test;
+
+/*
+ * The mechanisms of the SoftwareCryptoBackend against published test vectors: AES-CMAC of
+ * RFC 4493 and NIST SP 800-38B, and the version D key block example of ANSI X9.143.
+ */
+class SoftwareCryptoBackendTest {
+  private static final HexFormat HEX = HexFormat.of();
+
+  private static final String MESSAGE =
+      "6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51" +
+      "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710";
+
+  private static final byte[] AES_128_KEY = HEX.parseHex("2b7e151628aed2a6abf7158809cf4f3c");
+  private static final byte[] AES_256_KEY =
+      HEX.parseHex("603deb1015ca71be2b73aef0857d77811f352c073b6108d72d9810a30914dff4");
+
+  private static byte[] message(int len) {
+    return HEX.parseHex(MESSAGE.substring(0, 2 * len));
+  }
+
+  @Test
+  void aesCmac128() throws Exception {
+    assertEquals("bb1d6929e95937287fa37d129b756746",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_128_KEY, message(0))));
+    assertEquals("070a16b46b4d4144f79bdd9dd04a287c",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_128_KEY, message(16))));
+    assertEquals("dfa66747de9ae63030ca32611497c827",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_128_KEY, message(40))));
+    assertEquals("51f0bebf7e3b9d92fc49741779363cfe",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_128_KEY, message(64))));
+  }
+
+  @Test
+  void aesCmac256() throws Exception {
+    assertEquals("028962f61b7bf89efc6b551f4667d983",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_256_KEY, message(0))));
+    assertEquals("28a7023f452e8f82bd4bf28d8c37c35c",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_256_KEY, message(16))));
+    assertEquals("aaf3d8f1de5640c232f5b169b9c911e6",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_256_KEY, message(40))));
+    assertEquals("e1992190549f6ed5696a2c056c315410",
+                 HEX.formatHex(SoftwareCryptoBackend.aesCmac(AES_256_KEY, message(64))));
+  }
+
+  /* The same vector through the PKCS#11 calls the HardwareSecurityModule makes */
+  @Test
+  void aesCmacSignAndVerify() throws Exception {
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+    long hSession = backend.C_OpenSession(0, PKCS11Constants.CKF_SERIAL_SESSION, null, null);
+    long hKey = backend.C_CreateObject(hSession, secretKey(AES_256_KEY), true);
+    byte[] mac;
+
+    backend.C_SignInit(hSession, HSMTemplates.AES_CMAC, hKey, true);
+    mac = backend.C_Sign(hSession, message(40));
+    assertEquals("aaf3d8f1de5640c232f5b169b9c911e6", HEX.formatHex(mac));
+
+    backend.C_VerifyInit(hSession, HSMTemplates.AES_CMAC, hKey, true);
+    backend.C_Verify(hSession, message(40), mac);
+
+    mac[0] ^= 1;
+    backend.C_VerifyInit(hSession, HSMTemplates.AES_CMAC, hKey, true);
+    assertEquals(PKCS11Constants.CKR_SIGNATURE_INVALID,
+                 assertThrows(PKCS11Exception.class,
+                              () -> backend.C_Verify(hSession, message(40), mac))
+                     .getErrorCode());
+  }
+
+  @Test
+  void unwrapX9143KeyBlock() throws Exception {
+    byte[] kbpk =
+        HEX.parseHex("88E1AB2A2E3DD38C1FA039A536500CC8A87AB9D62DC92C01058FA79F44657DE6");
+    byte[] keyBlock = ("D0112P0AE00E0000" +
+                       "B82679114F470F540165EDFBF7E250FCEA43F810D215F8D207E2E417C07156A2" +
+                       "7E8E31DA05F7425509593D03A457DC34").getBytes(StandardCharsets.US_ASCII);
+
+    assertEquals("3f419e1cb7079442aa37474c2efbf8b8",
+                 HEX.formatHex(SoftwareCryptoBackend.unwrapKeyBlock(keyBlock, kbpk)));
+
+    keyBlock[20] ^= 1;
+    assertNull(SoftwareCryptoBackend.unwrapKeyBlock(keyBlock, kbpk));
+  }
+
+  @Test
+  void wrappedKeyBlockUnwraps() throws Exception {
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+    long hSession = backend.C_OpenSession(0, PKCS11Constants.CKF_SERIAL_SESSION, null, null);
+    byte[] kbpk = AES_256_KEY;
+    byte[] key = AES_128_KEY;
+    CK_MECHANISM wrap = new CK_MECHANISM();
+    byte[] keyBlock;
+
+    wrap.mechanism = HardwareSecurityModule.CKM_X9_143_KEY_WRAP;
+    wrap.pParameter = "D0000P0AE00E0000".toCharArray();
+
+    keyBlock = backend.C_WrapKey(hSession,
+                                 wrap,
+                                 backend.C_CreateObject(hSession, secretKey(kbpk), true),
+                                 backend.C_CreateObject(hSession, secretKey(key), true),
+                                 true);
+
+    assertEquals("D0112P0AE00E0000",
+                 new String(keyBlock, 0, 16, StandardCharsets.US_ASCII));
+    assertArrayEquals(key, SoftwareCryptoBackend.unwrapKeyBlock(keyBlock, kbpk));
+  }
+
+  private static CK_ATTRIBUTE[] secretKey(byte[] value) {
+    return new CK_ATTRIBUTE[] {
+      HSMTemplates.attribute(PKCS11Constants.CKA_CLASS, PKCS11Constants.CKO_SECRET_KEY),
+      HSMTemplates.attribute(PKCS11Constants.CKA_KEY_TYPE, PKCS11Constants.CKK_AES),
+      HSMTemplates.attribute(PKCS11Constants.CKA_VALUE, value)
+    };
+  }
+}
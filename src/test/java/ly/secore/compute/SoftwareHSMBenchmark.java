@@ -0,0 +1,79 @@
+package ly.secore.compute;
+
+/*
+ * Times the HSM side of the provisioning steps on the in-process SoftwareCryptoBackend, which
+ * leaves the Java overhead of the HardwareSecurityModule plus the JCA cost of the mechanisms.
+ * Each iteration of a key agreement step releases its keys again, so no objects pile up in the
+ * backend.  The complete key agreement runs against a DeviceSimulator as the responder.
+ *
+ * Usage: SoftwareHSMBenchmark [iterations]
+ */
+class SoftwareHSMBenchmark {
+  private interface Step {
+    void run() throws Exception;
+  }
+
+  public static void main(String args[]) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    SoftwareCryptoBackend backend = new SoftwareCryptoBackend();
+
+    try {
+      backend.provisionKeys();
+
+      try (HardwareSecurityModule hsm = new HardwareSecurityModule(backend, 0, 1)) {
+        byte[] derivationInfo = new byte[32];
+        HardwareSecurityModule.SetIncKeyContext ctx = hsm.setIncKeyStep1(derivationInfo);
+
+        ctx.responderRandom = new byte[HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN];
+
+        measure("deriveMfgResetSecret", iterations, () -> hsm.deriveMfgResetSecret(0x12345678));
+        measure("setIncKeyStep1", iterations, () -> hsm.setIncKeyStep1(derivationInfo));
+        measure("setIncKeyStep2", iterations, () -> {
+          hsm.setIncKeyStep2(ctx);
+          hsm.abandonSetIncKey(ctx);
+        });
+        measure("getAppKeyKeyblock", iterations, () -> hsm.getAppKeyKeyblock(derivationInfo));
+
+        try (Device device = new DeviceSimulator(1).connect()) {
+          device.openServiceSession(1);
+
+          measure("setIncKeyStep1..3", iterations, () -> {
+            HardwareSecurityModule.SetIncKeyContext agreement =
+                hsm.setIncKeyStep1(device.getReincarnationKeyDerivationInfo());
+
+            device.setIncKeyStep1(agreement);
+            hsm.setIncKeyStep2(agreement);
+            device.setIncKeyStep2(agreement);
+            hsm.setIncKeyStep3(agreement);
+            device.setIncKeyStep3(agreement);
+          });
+        }
+
+        System.out.format("%d objects left in the backend\n", backend.getObjectCount());
+      }
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace(System.out);
+    }
+  }
+
+  private static void measure(String name, int iterations, Step step) throws Exception {
+    long start;
+
+    /* Warm up before measuring */
+    for (int i = 0; i < iterations / 10 + 1; i++) {
+      step.run();
+    }
+
+    start = System.nanoTime();
+
+    for (int i = 0; i < iterations; i++) {
+      step.run();
+    }
+
+    System.out.format("%-20s: %10.1f us per call\n",
+                      name,
+                      (System.nanoTime() - start) / 1e3 / iterations);
+  }
+}
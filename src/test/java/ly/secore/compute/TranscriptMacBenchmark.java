@@ -0,0 +1,154 @@
+package ly.secore.compute;
+
+import iaik.pkcs.pkcs11.wrapper.CK_ATTRIBUTE;
+import iaik.pkcs.pkcs11.wrapper.CK_MECHANISM;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Compares MACing the key agreement transcript of setIncKeyStep3 field by field with
+ * C_SignUpdate against MACing the assembled transcript with a single C_Sign.  Every call into the
+ * PKCS#11 module is counted, so the output shows the native crossings per MAC next to the time.
+ *
+ * Usage: TranscriptMacBenchmark <pkcs11-module>|software <slot-id> [iterations]
+ */
+class TranscriptMacBenchmark {
+  private static final int[] TRANSCRIPT_FIELD_LENS = {
+    HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN,
+    HardwareSecurityModule.SECP256R1_PUBLIC_KEY_LEN,
+    HardwareSecurityModule.KEY_AGREEMENT_RANDOM_LEN,
+    HardwareSecurityModule.SECP256R1_PUBLIC_KEY_LEN,
+    HardwareSecurityModule.SECP256R1_PUBLIC_KEY_LEN,
+    HardwareSecurityModule.SECP256R1_SIGNATURE_LEN
+  };
+
+  public static void main(String args[]) {
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+    try (HardwareSecurityModule hsm = new HardwareSecurityModule(
+             args[0].equals("software") ? new SoftwareCryptoBackend() : new PKCS11Backend(args[0]),
+             Long.parseLong(args[1]),
+             0))
+    {
+      AtomicLong crossings = new AtomicLong();
+      CryptoBackend p11 = hsm.p11;
+      byte[][] fields = new byte[TRANSCRIPT_FIELD_LENS.length][];
+      long hSession = hsm.borrowSession();
+
+      hsm.p11 = (CryptoBackend)Proxy.newProxyInstance(CryptoBackend.class.getClassLoader(),
+                                                      new Class<?>[] { CryptoBackend.class },
+                                                      (proxy, method, methodArgs) -> {
+        crossings.incrementAndGet();
+
+        try {
+          return method.invoke(p11, methodArgs);
+        }
+        catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = new byte[TRANSCRIPT_FIELD_LENS[i]];
+        p11.C_GenerateRandom(hSession, fields[i]);
+      }
+
+      try {
+        long hKey = generateMacKey(p11, hSession);
+
+        /* Warm up both variants before measuring */
+        runMultiPart(hsm.p11, hSession, hKey, fields, iterations / 10 + 1);
+        runSinglePart(hsm.p11, hSession, hKey, fields, iterations / 10 + 1);
+
+        crossings.set(0);
+        report("update", runMultiPart(hsm.p11, hSession, hKey, fields, iterations),
+               crossings.getAndSet(0), iterations);
+        report("single", runSinglePart(hsm.p11, hSession, hKey, fields, iterations),
+               crossings.getAndSet(0), iterations);
+
+        p11.C_DestroyObject(hSession, hKey);
+      }
+      finally {
+        hsm.p11 = p11;
+        hsm.releaseSession(hSession);
+      }
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace(System.out);
+    }
+  }
+
+  private static long generateMacKey(CryptoBackend p11, long hSession) throws Exception {
+    CK_ATTRIBUTE[] keyTemplate = new CK_ATTRIBUTE[4];
+    CK_MECHANISM ckm_aes_key_gen = new CK_MECHANISM();
+
+    keyTemplate[0] = new CK_ATTRIBUTE();
+    keyTemplate[0].type = PKCS11Constants.CKA_CLASS;
+    keyTemplate[0].pValue = PKCS11Constants.CKO_SECRET_KEY;
+
+    keyTemplate[1] = new CK_ATTRIBUTE();
+    keyTemplate[1].type = PKCS11Constants.CKA_KEY_TYPE;
+    keyTemplate[1].pValue = PKCS11Constants.CKK_AES;
+
+    keyTemplate[2] = new CK_ATTRIBUTE();
+    keyTemplate[2].type = PKCS11Constants.CKA_VALUE_LEN;
+    keyTemplate[2].pValue = (long)HardwareSecurityModule.AES_256_KEY_LEN;
+
+    keyTemplate[3] = new CK_ATTRIBUTE();
+    keyTemplate[3].type = PKCS11Constants.CKA_SIGN;
+    keyTemplate[3].pValue = true;
+
+    ckm_aes_key_gen.mechanism = PKCS11Constants.CKM_AES_KEY_GEN;
+
+    return p11.C_GenerateKey(hSession, ckm_aes_key_gen, keyTemplate, true);
+  }
+
+  private static long runMultiPart(CryptoBackend p11, long hSession, long hKey, byte[][] fields,
+                                   int iterations)
+      throws Exception
+  {
+    CK_MECHANISM ckm_aes_cmac = new CK_MECHANISM();
+    long start = System.nanoTime();
+
+    ckm_aes_cmac.mechanism = PKCS11Constants.CKM_AES_CMAC;
+
+    for (int i = 0; i < iterations; i++) {
+      p11.C_SignInit(hSession, ckm_aes_cmac, hKey, true);
+
+      for (byte[] field : fields) {
+        p11.C_SignUpdate(hSession, field);
+      }
+
+      p11.C_SignFinal(hSession);
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static long runSinglePart(CryptoBackend p11, long hSession, long hKey, byte[][] fields,
+                                    int iterations)
+      throws Exception
+  {
+    CK_MECHANISM ckm_aes_cmac = new CK_MECHANISM();
+    long start = System.nanoTime();
+
+    ckm_aes_cmac.mechanism = PKCS11Constants.CKM_AES_CMAC;
+
+    for (int i = 0; i < iterations; i++) {
+      p11.C_SignInit(hSession, ckm_aes_cmac, hKey, true);
+      p11.C_Sign(hSession, HardwareSecurityModule.getTranscript(fields));
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static void report(String variant, long nanos, long crossings, int iterations) {
+    System.out.format("%-6s: %10.1f us per MAC, %.0f native crossings per MAC\n",
+                      variant,
+                      nanos / 1e3 / iterations,
+                      (double)crossings / iterations);
+  }
+}